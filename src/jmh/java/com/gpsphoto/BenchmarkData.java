@@ -0,0 +1,229 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates the synthetic tracks, photos and matched photo lists the
+ * benchmarks run against so the suite needs no sample data
+ */
+final class BenchmarkData
+{
+    static final long START_TIME = 1500000000000L;
+    static final long TRACK_INTERVAL = 1000L;
+
+    private static final FastDateFormat GPX_TIME_FORMAT =
+        FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss'Z'", GPSPhoto.WALL_CLOCK_TIME_ZONE);
+
+    private static final FastDateFormat EXIF_TIME_FORMAT =
+        FastDateFormat.getInstance("yyyy:MM:dd HH:mm:ss", GPSPhoto.WALL_CLOCK_TIME_ZONE);
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATETIME = 0x0132;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private BenchmarkData()
+    {
+    }
+
+    static File createTempDir(String prefix) throws IOException
+    {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void deleteTempDir(File dir)
+    {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    /**
+     * Writes a GPX file with a single track segment of points one second
+     * apart, each with an elevation and HDOP like a typical logger
+     */
+    static void writeGPX(File gpxFile, int points) throws IOException
+    {
+        Random random = new Random(42L);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(gpxFile), StandardCharsets.UTF_8)))
+        {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<gpx version=\"1.1\" creator=\"BenchmarkData\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+            writer.write("<trk><name>Benchmark</name><trkseg>\n");
+
+            double latitude = -25.0;
+            double longitude = 120.0;
+            double elevation = 100.0;
+
+            for (int i = 0; i < points; ++i)
+            {
+                writer.write(String.format(Locale.ROOT, "<trkpt lat=\"%.7f\" lon=\"%.7f\"><ele>%.1f</ele><time>%s</time><hdop>%.1f</hdop></trkpt>\n",
+                    latitude, longitude, elevation, GPX_TIME_FORMAT.format(START_TIME + i * TRACK_INTERVAL),
+                    0.5 + random.nextInt(20) * 0.1));
+
+                latitude += random.nextDouble() * 0.00001;
+                longitude += random.nextDouble() * 0.00001;
+                elevation += random.nextDouble() - 0.5;
+            }
+
+            writer.write("</trkseg></trk>\n</gpx>\n");
+        }
+    }
+
+    /**
+     * Builds a track in memory matching the track written by writeGPX
+     */
+    static TrackIndex createTrack(int points)
+    {
+        Random random = new Random(42L);
+        TrackIndex.Builder builder = new TrackIndex.Builder(points);
+
+        double latitude = -25.0;
+        double longitude = 120.0;
+
+        for (int i = 0; i < points; ++i)
+        {
+            builder.add(latitude, longitude, START_TIME + i * TRACK_INTERVAL);
+            latitude += random.nextDouble() * 0.00001;
+            longitude += random.nextDouble() * 0.00001;
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Creates matched photos spread along a track, the photo files are
+     * named but not written
+     */
+    static List<GPSPhoto> createMatchedPhotos(int count)
+    {
+        Random random = new Random(42L);
+        List<GPSPhoto> photos = new ArrayList<>(count);
+
+        for (int i = 0; i < count; ++i)
+        {
+            GPSPhoto photo = new GPSPhoto(new File(String.format("IMG_%06d.JPG", i)));
+            photo.setCaptureTime(new Date(START_TIME + i * TRACK_INTERVAL));
+            photo.applyTimeDelta(0L);
+            photo.setLatitude(-25.0 + random.nextDouble());
+            photo.setLongitude(120.0 + random.nextDouble());
+            photo.setMatched(true);
+            photos.add(photo);
+        }
+
+        return photos;
+    }
+
+    /**
+     * Writes a JPEG photo with an EXIF header holding the capture time and
+     * orientation and optionally an embedded thumbnail
+     *
+     * @param thumbnailWidth width of the embedded thumbnail or zero for none
+     */
+    static void writePhoto(File photoFile, int width, int height, Date captureTime, int thumbnailWidth) throws IOException
+    {
+        byte[] image = encodeJPEG(width, height);
+        byte[] thumbnail = thumbnailWidth > 0 ? encodeJPEG(thumbnailWidth, thumbnailWidth * height / width) : null;
+        byte[] exif = encodeExif(EXIF_TIME_FORMAT.format(captureTime), thumbnail);
+
+        /**
+         * Insert the EXIF segment after the JFIF segment ImageIO writes
+         */
+        int app0End = 4 + ((image[4] & 0xFF) << 8 | (image[5] & 0xFF));
+
+        try (FileOutputStream out = new FileOutputStream(photoFile))
+        {
+            out.write(image, 0, app0End);
+            out.write(exif);
+            out.write(image, app0End, image.length - app0End);
+        }
+    }
+
+    private static byte[] encodeJPEG(int width, int height) throws IOException
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(40, 80, 160), width, height, Color.ORANGE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 0, width / 4, height / 8);
+        graphics.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a big endian EXIF APP1 segment with IFD0 holding the
+     * orientation and date time and IFD1 pointing at the thumbnail
+     */
+    private static byte[] encodeExif(String dateTime, byte[] thumbnail) throws IOException
+    {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(tiff);
+
+        int ifd0Entries = 2;
+        int dateTimeOffset = 8 + 2 + 12 * ifd0Entries + 4;
+        int ifd1Offset = thumbnail == null ? 0 : dateTimeOffset + 20;
+
+        data.writeBytes("MM");
+        data.writeShort(42);
+        data.writeInt(8);
+
+        data.writeShort(ifd0Entries);
+        writeEntry(data, TAG_ORIENTATION, 3, 1, ExifHeaderReader.ORIENTATION_NORMAL << 16);
+        writeEntry(data, TAG_DATETIME, 2, 20, dateTimeOffset);
+        data.writeInt(ifd1Offset);
+        data.writeBytes(dateTime);
+        data.writeByte(0);
+
+        if (thumbnail != null)
+        {
+            data.writeShort(2);
+            writeEntry(data, TAG_THUMBNAIL_OFFSET, 4, 1, ifd1Offset + 2 + 12 * 2 + 4);
+            writeEntry(data, TAG_THUMBNAIL_LENGTH, 4, 1, thumbnail.length);
+            data.writeInt(0);
+            data.write(thumbnail);
+        }
+
+        ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        DataOutputStream segmentData = new DataOutputStream(segment);
+        segmentData.writeShort(0xFFE1);
+        segmentData.writeShort(2 + 6 + tiff.size());
+        segmentData.writeBytes("Exif");
+        segmentData.writeShort(0);
+        tiff.writeTo(segment);
+
+        return segment.toByteArray();
+    }
+
+    private static void writeEntry(DataOutputStream data, int tag, int type, int count, int value) throws IOException
+    {
+        data.writeShort(tag);
+        data.writeShort(type);
+        data.writeInt(count);
+        data.writeInt(value);
+    }
+}
@@ -0,0 +1,83 @@
+package com.gpsphoto;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares matching a photo against a large synthetic track using the
+ * binary search over the track index against the original linear scan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComputePositionBenchmark
+{
+    private static final long START_TIME = BenchmarkData.START_TIME;
+    private static final long TOLERANCE = 2000L;
+    private static final int PHOTO_COUNT = 1024;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int trackSize;
+
+    private TrackIndex track;
+    private GPSPhoto[] photos;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        Logger.getRootLogger().setLevel(Level.OFF);
+
+        Random random = new Random(42L);
+
+        track = BenchmarkData.createTrack(trackSize);
+        long endTime = track.getTime(trackSize - 1);
+
+        photos = new GPSPhoto[PHOTO_COUNT];
+
+        for (int i = 0; i < PHOTO_COUNT; ++i)
+        {
+            photos[i] = new GPSPhoto(new File("photo" + i + ".jpg"));
+            photos[i].setCaptureTime(new Date(START_TIME + (long) (random.nextDouble() * (endTime - START_TIME))));
+            photos[i].applyTimeDelta(0L);
+        }
+    }
+
+    @Benchmark
+    public boolean binarySearch()
+    {
+        GPSPhoto photo = photos[next++ & (PHOTO_COUNT - 1)];
+        return photo.computePosition(track, TOLERANCE);
+    }
+
+    @Benchmark
+    public boolean linearScan()
+    {
+        GPSPhoto photo = photos[next++ & (PHOTO_COUNT - 1)];
+        long offsetTimeMillis = photo.getOffsetTime().getTime();
+
+        for (int i = 0; i < track.size() - 1; ++i)
+        {
+            long thisTime = track.getTime(i);
+            long nextTime = track.getTime(i + 1);
+
+            if (thisTime != nextTime &&
+                thisTime <= offsetTimeMillis && offsetTimeMillis <= nextTime &&
+                offsetTimeMillis - thisTime <= TOLERANCE && nextTime - offsetTimeMillis <= TOLERANCE)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
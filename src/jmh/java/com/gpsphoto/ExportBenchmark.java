@@ -0,0 +1,81 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures exporting generated matched photos to KML, KMZ and a shape
+ * file including its spatial index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark
+{
+    @Param({ "10000", "100000" })
+    public int photoCount;
+
+    private File tempDir;
+    private List<GPSPhoto> photos;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Logger.getRootLogger().setLevel(Level.OFF);
+
+        tempDir = BenchmarkData.createTempDir("export");
+        photos = BenchmarkData.createMatchedPhotos(photoCount);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchmarkData.deleteTempDir(tempDir);
+    }
+
+    @Benchmark
+    public long kml() throws Exception
+    {
+        return writeKML(new File(tempDir, "photos.kml"));
+    }
+
+    @Benchmark
+    public long kmz() throws Exception
+    {
+        return writeKML(new File(tempDir, "photos.kmz"));
+    }
+
+    @Benchmark
+    public long shapeFile() throws Exception
+    {
+        File shapeFile = new File(tempDir, "photos.shp");
+        GPSPhotoProcessor.writeShapeFile(shapeFile, photos, true, false);
+        return shapeFile.length();
+    }
+
+    private long writeKML(File kmlFile) throws Exception
+    {
+        try (KMLWriter writer = new KMLWriter(kmlFile, "Benchmark"))
+        {
+            for (GPSPhoto photo: photos)
+            {
+                writer.writePlacemark(
+                        FilenameUtils.removeExtension(photo.getInputFile().getName()),
+                        photo.getInputFile().getName(),
+                        photo.getLatitude(),
+                        photo.getLongitude());
+            }
+        }
+
+        return kmlFile.length();
+    }
+}
@@ -0,0 +1,66 @@
+package com.gpsphoto;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares extracting the capture time from a generated photo by reading
+ * just the EXIF header against reading the full meta data
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhotoMetaDataBenchmark
+{
+    private File tempDir;
+    private File photoFile;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Logger.getRootLogger().setLevel(Level.OFF);
+
+        tempDir = BenchmarkData.createTempDir("metadata");
+        photoFile = new File(tempDir, "IMG_000000.JPG");
+        BenchmarkData.writePhoto(photoFile, 4000, 3000, new Date(BenchmarkData.START_TIME), 160);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchmarkData.deleteTempDir(tempDir);
+    }
+
+    @Benchmark
+    public Date exifHeader() throws Exception
+    {
+        return new ExifHeaderReader(photoFile).readCaptureTime();
+    }
+
+    @Benchmark
+    public Date fullMetaData() throws Exception
+    {
+        Metadata metadata = ImageMetadataReader.readMetadata(photoFile);
+        ExifIFD0Directory directory = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        return directory.getDate(ExifIFD0Directory.TAG_DATETIME, GPSPhoto.WALL_CLOCK_TIME_ZONE);
+    }
+
+    @Benchmark
+    public Date loadMetaData() throws Exception
+    {
+        GPSPhoto photo = new GPSPhoto(photoFile);
+        photo.loadMetaData();
+        return photo.getCaptureTime();
+    }
+}
@@ -0,0 +1,60 @@
+package com.gpsphoto;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a thumbnail for a generated photo from its embedded
+ * EXIF thumbnail and by decoding the subsampled photo when the embedded
+ * thumbnail is missing or too small
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThumbnailBenchmark
+{
+    /**
+     * Width of the embedded thumbnail, zero writes the photo without one
+     * and 160 is too small to be used for the default thumbnail size
+     */
+    @Param({ "0", "160", "640" })
+    public int embeddedWidth;
+
+    private File tempDir;
+    private File photoFile;
+    private File thumbnailFile;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Logger.getRootLogger().setLevel(Level.OFF);
+
+        tempDir = BenchmarkData.createTempDir("thumbnail");
+        photoFile = new File(tempDir, "IMG_000000.JPG");
+        thumbnailFile = new File(tempDir, "IMG_000000_thumb.JPG");
+        BenchmarkData.writePhoto(photoFile, 4000, 3000, new Date(BenchmarkData.START_TIME), embeddedWidth);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchmarkData.deleteTempDir(tempDir);
+    }
+
+    @Benchmark
+    public long writeThumbnail() throws Exception
+    {
+        GPSPhoto photo = new GPSPhoto(photoFile);
+        photo.setThumbnailFile(thumbnailFile);
+        photo.computeThumbnail();
+        return thumbnailFile.length();
+    }
+}
@@ -0,0 +1,94 @@
+package com.gpsphoto;
+
+import com.hs.gpxparser.GPXParser;
+import com.hs.gpxparser.GPXStreamParser;
+import com.hs.gpxparser.ITrackPointHandler;
+import com.hs.gpxparser.modal.GPX;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a generated GPX track with the document parser, the
+ * streaming parser feeding the track index and the track cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrackLoadBenchmark
+{
+    @Param({ "10000", "100000", "1000000" })
+    public int trackSize;
+
+    private File tempDir;
+    private File gpxFile;
+    private TrackCache trackCache;
+    private long gpxSize;
+    private long gpxHash;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        Logger.getRootLogger().setLevel(Level.OFF);
+
+        tempDir = BenchmarkData.createTempDir("trackload");
+        gpxFile = new File(tempDir, "track.gpx");
+        BenchmarkData.writeGPX(gpxFile, trackSize);
+
+        gpxSize = gpxFile.length();
+        gpxHash = TrackCache.hash(gpxFile);
+        trackCache = TrackCache.forGPX(gpxFile, tempDir);
+        trackCache.write(streamParser(), gpxSize, gpxHash);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchmarkData.deleteTempDir(tempDir);
+    }
+
+    @Benchmark
+    public GPX documentParser() throws Exception
+    {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(gpxFile)))
+        {
+            return new GPXParser().parseGPX(in);
+        }
+    }
+
+    @Benchmark
+    public TrackIndex streamParser() throws Exception
+    {
+        final TrackIndex.Builder builder = new TrackIndex.Builder();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(gpxFile)))
+        {
+            new GPXStreamParser().parseTrackPoints(in, new ITrackPointHandler()
+            {
+                @Override
+                public void handleTrackPoint(double latitude, double longitude, double elevation, double hdop, long time, HashMap<String, Object> extensionData)
+                {
+                    builder.add(latitude, longitude, elevation, hdop, time);
+                }
+            });
+        }
+
+        return builder.build();
+    }
+
+    @Benchmark
+    public TrackIndex trackCache() throws Exception
+    {
+        return trackCache.read(gpxSize, TrackCache.hash(gpxFile));
+    }
+}
@@ -0,0 +1,55 @@
+package com.hs.gpxparser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding gpx times with the decoder against the regular expression
+ * and SimpleDateFormat parsing it replaced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GPXTimeDecoderBenchmark
+{
+    private static final int TIME_COUNT = 1024;
+
+    private final SimpleDateFormat xmlDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private String[] times;
+    private char[][] timeChars;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        times = new String[TIME_COUNT];
+        timeChars = new char[TIME_COUNT][];
+
+        for (int i = 0; i < TIME_COUNT; ++i)
+        {
+            times[i] = String.format("2019-06-%02dT%02d:%02d:%02dZ", 1 + i % 28, i % 24, i % 60, (i * 7) % 60);
+            timeChars[i] = times[i].toCharArray();
+        }
+    }
+
+    @Benchmark
+    public long decoder()
+    {
+        char[] chars = timeChars[next++ & (TIME_COUNT - 1)];
+        return GPXTimeDecoder.decode(chars, 0, chars.length);
+    }
+
+    @Benchmark
+    public long regexSimpleDateFormat() throws ParseException
+    {
+        String time = times[next++ & (TIME_COUNT - 1)];
+        return xmlDateFormat.parse(time.replaceAll("([0-9\\-T]+:[0-9]{2}:[0-9.+]+):([0-9]{2})", "$1$2")).getTime();
+    }
+}
@@ -0,0 +1,412 @@
+package com.gpsphoto;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Reads the capture time, orientation and embedded thumbnail from the EXIF
+ * segment at the head of a JPEG file using positioned reads of just the segment
+ * markers and the APP1 segment, leaving anything unusual to the full metadata extractor
+ */
+public class ExifHeaderReader
+{
+    private static final int MARKER_SOI = 0xFFD8;
+    private static final int MARKER_APP1 = 0xFFE1;
+    private static final int MARKER_SOS = 0xFFDA;
+    private static final int MARKER_EOI = 0xFFD9;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATETIME = 0x0132;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+
+    /**
+     * The orientation of images without an orientation tag
+     */
+    public static final int ORIENTATION_NORMAL = 1;
+
+    /**
+     * Give up on files with an unreasonable number of segments before the EXIF data
+     */
+    private static final int MAX_SEGMENTS = 32;
+
+    private static final byte[] EXIF_IDENTIFIER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+
+    private ByteBuffer segment;
+
+    private long bytesRead = 0L;
+
+    public ExifHeaderReader(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * The number of bytes read from the file so far
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    /**
+     * Reads the IFD0 date time tag returning null if the file has no EXIF
+     * segment, the tag is missing or it is not in the standard format
+     */
+    public Date readCaptureTime() throws IOException
+    {
+        int ifd0Offset = readIFD0Offset();
+
+        if (ifd0Offset < 0)
+        {
+            return null;
+        }
+
+        int entry = findEntry(ifd0Offset, TAG_DATETIME);
+
+        if (entry < 0)
+        {
+            return null;
+        }
+
+        int type = segment.getShort(entry + 2) & 0xFFFF;
+        int count = segment.getInt(entry + 4);
+        int valueOffset = count <= 4 ? entry + 8 : segment.getInt(entry + 8);
+
+        if (type != TYPE_ASCII || count < 19 || valueOffset < 0 || valueOffset + 19 > segment.limit())
+        {
+            return null;
+        }
+
+        return parseDateTime(valueOffset);
+    }
+
+    /**
+     * Reads the IFD0 orientation tag returning {@link #ORIENTATION_NORMAL}
+     * if there is no EXIF segment or a valid orientation
+     */
+    public int readOrientation() throws IOException
+    {
+        int ifd0Offset = readIFD0Offset();
+
+        if (ifd0Offset < 0)
+        {
+            return ORIENTATION_NORMAL;
+        }
+
+        int orientation = readInteger(findEntry(ifd0Offset, TAG_ORIENTATION));
+
+        if (orientation < 1 || orientation > 8)
+        {
+            return ORIENTATION_NORMAL;
+        }
+
+        return orientation;
+    }
+
+    /**
+     * Reads the JPEG thumbnail embedded in IFD1 returning null if there is none
+     */
+    public byte[] readThumbnail() throws IOException
+    {
+        int ifd0Offset = readIFD0Offset();
+
+        if (ifd0Offset < 0)
+        {
+            return null;
+        }
+
+        int ifd1Offset = readNextIFDOffset(ifd0Offset);
+
+        if (ifd1Offset <= 0)
+        {
+            return null;
+        }
+
+        int offset = readInteger(findEntry(ifd1Offset, TAG_THUMBNAIL_OFFSET));
+        int length = readInteger(findEntry(ifd1Offset, TAG_THUMBNAIL_LENGTH));
+
+        if (offset < 8 || length <= 0 || offset > segment.limit() - length)
+        {
+            return null;
+        }
+
+        byte[] thumbnail = new byte[length];
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(offset);
+        buffer.get(thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * Loads the EXIF segment on first use returning the offset of IFD0
+     * or -1 if the file has no usable EXIF segment
+     */
+    private int readIFD0Offset() throws IOException
+    {
+        if (segment == null)
+        {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+            {
+                if (!readExifSegment(channel))
+                {
+                    segment = ByteBuffer.allocate(0);
+                }
+            }
+        }
+
+        if (segment.limit() < 8)
+        {
+            return -1;
+        }
+
+        return readTIFFHeader();
+    }
+
+    /**
+     * Walks the segment markers from the start of the file until the APP1
+     * EXIF segment is found and reads it
+     */
+    private boolean readExifSegment(FileChannel channel) throws IOException
+    {
+        ByteBuffer marker = ByteBuffer.allocate(4);
+        long position = 0L;
+
+        readFully(channel, marker, position, 2);
+
+        if ((marker.getShort(0) & 0xFFFF) != MARKER_SOI)
+        {
+            return false;
+        }
+
+        position += 2;
+
+        for (int i = 0; i < MAX_SEGMENTS; ++i)
+        {
+            readFully(channel, marker, position, 4);
+
+            int type = marker.getShort(0) & 0xFFFF;
+            int length = marker.getShort(2) & 0xFFFF;
+
+            if ((type & 0xFF00) != 0xFF00 || type == MARKER_SOS || type == MARKER_EOI || length < 2)
+            {
+                return false;
+            }
+
+            if (type == MARKER_APP1 && length >= 2 + EXIF_IDENTIFIER.length + 8)
+            {
+                ByteBuffer buffer = ByteBuffer.allocate(length - 2);
+                readFully(channel, buffer, position + 4, length - 2);
+
+                if (isExif(buffer))
+                {
+                    buffer.position(EXIF_IDENTIFIER.length);
+                    segment = buffer.slice();
+                    return true;
+                }
+            }
+
+            position += 2 + length;
+        }
+
+        return false;
+    }
+
+    private static boolean isExif(ByteBuffer buffer)
+    {
+        for (int i = 0; i < EXIF_IDENTIFIER.length; ++i)
+        {
+            if (buffer.get(i) != EXIF_IDENTIFIER[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets the byte order from the TIFF header returning the offset of IFD0
+     */
+    private int readTIFFHeader()
+    {
+        if (segment.get(0) == 'I' && segment.get(1) == 'I')
+        {
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        else if (segment.get(0) == 'M' && segment.get(1) == 'M')
+        {
+            segment.order(ByteOrder.BIG_ENDIAN);
+        }
+        else
+        {
+            return -1;
+        }
+
+        if (segment.getShort(2) != 42)
+        {
+            return -1;
+        }
+
+        return segment.getInt(4);
+    }
+
+    /**
+     * Returns the offset of the entry for a tag in an IFD or -1 if it is not present
+     */
+    private int findEntry(int ifdOffset, int tag)
+    {
+        if (ifdOffset < 8 || ifdOffset + 2 > segment.limit())
+        {
+            return -1;
+        }
+
+        int entries = segment.getShort(ifdOffset) & 0xFFFF;
+
+        for (int i = 0; i < entries; ++i)
+        {
+            int entry = ifdOffset + 2 + i * 12;
+
+            if (entry + 12 > segment.limit())
+            {
+                return -1;
+            }
+
+            if ((segment.getShort(entry) & 0xFFFF) == tag)
+            {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    private int readNextIFDOffset(int ifdOffset)
+    {
+        if (ifdOffset < 8 || ifdOffset + 2 > segment.limit())
+        {
+            return -1;
+        }
+
+        int next = ifdOffset + 2 + (segment.getShort(ifdOffset) & 0xFFFF) * 12;
+
+        if (next + 4 > segment.limit())
+        {
+            return -1;
+        }
+
+        return segment.getInt(next);
+    }
+
+    /**
+     * Reads a single short or long entry value returning -1 for anything else
+     */
+    private int readInteger(int entry)
+    {
+        if (entry < 0 || segment.getInt(entry + 4) != 1)
+        {
+            return -1;
+        }
+
+        int type = segment.getShort(entry + 2) & 0xFFFF;
+
+        if (type == TYPE_SHORT)
+        {
+            return segment.getShort(entry + 8) & 0xFFFF;
+        }
+        else if (type == TYPE_LONG)
+        {
+            return segment.getInt(entry + 8);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parses the standard yyyy:MM:dd HH:mm:ss EXIF date time format
+     */
+    private Date parseDateTime(int offset)
+    {
+        if (segment.get(offset + 4) != ':' || segment.get(offset + 7) != ':' ||
+            segment.get(offset + 10) != ' ' || segment.get(offset + 13) != ':' || segment.get(offset + 16) != ':')
+        {
+            return null;
+        }
+
+        int year = digits(offset, 4);
+        int month = digits(offset + 5, 2);
+        int day = digits(offset + 8, 2);
+        int hour = digits(offset + 11, 2);
+        int minute = digits(offset + 14, 2);
+        int second = digits(offset + 17, 2);
+
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31 ||
+            hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+        {
+            return null;
+        }
+
+        Calendar calendar = Calendar.getInstance(GPSPhoto.WALL_CLOCK_TIME_ZONE);
+        calendar.setLenient(false);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+
+        try
+        {
+            return calendar.getTime();
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private int digits(int offset, int count)
+    {
+        int value = 0;
+
+        for (int i = offset; i < offset + count; ++i)
+        {
+            int digit = segment.get(i) - '0';
+
+            if (digit < 0 || digit > 9)
+            {
+                return -1;
+            }
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException
+    {
+        buffer.clear();
+        buffer.limit(length);
+
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new EOFException("Unexpected end of file reading JPEG header");
+            }
+        }
+
+        bytesRead += length;
+    }
+}
@@ -0,0 +1,142 @@
+package com.gpsphoto;
+
+/**
+ * Formats doubles with a fixed number of decimal places giving the same
+ * text as String.format("%.Nf") without the cost of the formatter, rounding
+ * the shortest decimal representation of the value half up.
+ *
+ * Instances reuse a digit buffer so are not thread safe.
+ */
+public class FixedDecimalFormatter
+{
+    private final int decimals;
+    private final String pattern;
+
+    /**
+     * Significant digits of the value, room for the 17 digits of a double and a carry
+     */
+    private final char[] digits = new char[24];
+
+    public FixedDecimalFormatter(int decimals)
+    {
+        this.decimals = decimals;
+        this.pattern = "%." + decimals + "f";
+    }
+
+    public String format(double value)
+    {
+        StringBuilder buf = new StringBuilder(decimals + 8);
+        append(buf, value);
+        return buf.toString();
+    }
+
+    public void append(StringBuilder buf, double value)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+        {
+            buf.append(String.format(pattern, value));
+            return;
+        }
+
+        if (Double.doubleToRawLongBits(value) < 0L)
+        {
+            buf.append('-');
+        }
+
+        /**
+         * Split the shortest representation into its digits and the
+         * number of digits before the decimal point
+         */
+        String text = Double.toString(Math.abs(value));
+        int exponentIndex = text.indexOf('E');
+        int end = exponentIndex < 0 ? text.length() : exponentIndex;
+        int count = 0;
+        int point = 0;
+
+        for (int i = 0; i < end; ++i)
+        {
+            char c = text.charAt(i);
+
+            if (c == '.')
+            {
+                point = count;
+            }
+            else
+            {
+                digits[count++] = c;
+            }
+        }
+
+        if (exponentIndex >= 0)
+        {
+            point += parseExponent(text, exponentIndex + 1);
+        }
+
+        /**
+         * Round half up at the last decimal place
+         */
+        int keep = point + decimals;
+
+        if (keep < count)
+        {
+            boolean carry = keep >= 0 && digits[keep] >= '5';
+            count = Math.max(keep, 0);
+
+            for (int i = count - 1; carry && i >= 0; --i)
+            {
+                if (digits[i] == '9')
+                {
+                    digits[i] = '0';
+                }
+                else
+                {
+                    digits[i]++;
+                    carry = false;
+                }
+            }
+
+            if (carry)
+            {
+                System.arraycopy(digits, 0, digits, 1, count);
+                digits[0] = '1';
+                ++count;
+                ++point;
+            }
+        }
+
+        if (point <= 0)
+        {
+            buf.append('0');
+        }
+        else
+        {
+            for (int i = 0; i < point; ++i)
+            {
+                buf.append(i < count ? digits[i] : '0');
+            }
+        }
+
+        if (decimals > 0)
+        {
+            buf.append('.');
+
+            for (int i = point; i < point + decimals; ++i)
+            {
+                buf.append(i >= 0 && i < count ? digits[i] : '0');
+            }
+        }
+    }
+
+    private static int parseExponent(String text, int start)
+    {
+        boolean negative = text.charAt(start) == '-';
+        int exponent = 0;
+
+        for (int i = negative ? start + 1 : start; i < text.length(); ++i)
+        {
+            exponent = exponent * 10 + (text.charAt(i) - '0');
+        }
+
+        return negative ? -exponent : exponent;
+    }
+}
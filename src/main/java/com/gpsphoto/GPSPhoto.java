@@ -3,7 +3,6 @@ package com.gpsphoto;
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.exif.ExifIFD0Directory;
-import net.coobird.thumbnailator.Thumbnails;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.log4j.Logger;
 
@@ -21,6 +20,12 @@ public class GPSPhoto
 {
     private static final Logger LOGGER = Logger.getLogger(GPSPhoto.class);
 
+    /**
+     * Camera and user entered wall clock times are held in the UTC time zone
+     * so they compare directly against GPS times without daylight savings shifts
+     */
+    public static final TimeZone WALL_CLOCK_TIME_ZONE = TimeZone.getTimeZone("UTC");
+
     private final File inputFile;
 
     private Double latitude;
@@ -30,6 +35,7 @@ public class GPSPhoto
     private Date offsetTime;
 
     private Metadata metadata;
+    private long metaDataBytesRead = 0L;
 
     private int thumbnailWidth = 512;
     private int thumbnailHeight = 512;
@@ -79,8 +85,23 @@ public class GPSPhoto
         this.longitude = longitude;
     }
 
-    public Metadata getMetadata()
+    /**
+     * Full meta data is only read when it is first requested
+     */
+    public Metadata getMetadata() throws GPSPhotoException
     {
+        if (metadata == null)
+        {
+            try
+            {
+                metadata = ImageMetadataReader.readMetadata(inputFile);
+            }
+            catch (Throwable t)
+            {
+                throw new GPSPhotoException("Failed to extract image meta data from: " + inputFile, t);
+            }
+        }
+
         return metadata;
     }
 
@@ -89,6 +110,24 @@ public class GPSPhoto
         this.thumbnailFile = thumbnailFile;
     }
 
+    public File getThumbnailFile()
+    {
+        return thumbnailFile;
+    }
+
+    /**
+     * The settings thumbnails are written with, used to detect stale thumbnails
+     */
+    public String getThumbnailSettings()
+    {
+        return String.format("%dx%d@%s", thumbnailWidth, thumbnailHeight, thumbnailQuality);
+    }
+
+    public boolean hasThumbnailFile()
+    {
+        return thumbnailFile != null;
+    }
+
     public void computeThumbnail() throws IOException
     {
         if (thumbnailFile == null)
@@ -96,28 +135,52 @@ public class GPSPhoto
             return;
         }
 
-        Thumbnails.of(inputFile)
-                .size(thumbnailWidth, thumbnailHeight)
-                .outputQuality(thumbnailQuality)
-                .toFile(thumbnailFile);
+        new ThumbnailWriter(thumbnailWidth, thumbnailHeight, thumbnailQuality).write(inputFile, thumbnailFile);
     }
 
+    /**
+     * Loads the capture time reading just the EXIF header of the file,
+     * falling back to the full meta data for files it cannot handle
+     */
     public void loadMetaData() throws GPSPhotoException
     {
+        ExifHeaderReader exif = new ExifHeaderReader(inputFile);
+
         try
         {
-            this.metadata = ImageMetadataReader.readMetadata(inputFile);
+            captureTime = exif.readCaptureTime();
+        }
+        catch (Throwable t)
+        {
+            LOGGER.debug("Failed to read EXIF header from: " + inputFile, t);
+        }
 
-            Collection<ExifIFD0Directory> exifIFD0Directory = metadata.getDirectoriesOfType(ExifIFD0Directory.class);
+        metaDataBytesRead = exif.getBytesRead();
 
-            for (ExifIFD0Directory directory: exifIFD0Directory)
+        if (captureTime == null)
+        {
+            /**
+             * The full meta data is read from the whole file
+             */
+            metaDataBytesRead += inputFile.length();
+
+            try
             {
-                captureTime = directory.getDate(ExifIFD0Directory.TAG_DATETIME, TimeZone.getDefault());
+                Collection<ExifIFD0Directory> exifIFD0Directory = getMetadata().getDirectoriesOfType(ExifIFD0Directory.class);
+
+                for (ExifIFD0Directory directory: exifIFD0Directory)
+                {
+                    captureTime = directory.getDate(ExifIFD0Directory.TAG_DATETIME, WALL_CLOCK_TIME_ZONE);
+                }
+            }
+            catch (GPSPhotoException e)
+            {
+                throw e;
+            }
+            catch (Throwable t)
+            {
+                throw new GPSPhotoException("Failed to extract image meta data from: " + inputFile, t);
             }
-        }
-        catch (Throwable t)
-        {
-            throw new GPSPhotoException("Failed to extract image meta data from: " + inputFile, t);
         }
 
         if (captureTime == null)
@@ -131,69 +194,87 @@ public class GPSPhoto
         offsetTime = new Date(captureTime.getTime() + timeOffset);
     }
 
+    /**
+     * Hunt for a position in a list of positions, prefer the track index
+     * version when matching many photos against the same positions
+     */
+    public boolean computePosition(List<GPSPosition> positions, long tolerance)
+    {
+        return computePosition(TrackIndex.of(positions), tolerance);
+    }
+
     /**
      * Hunt for a position where the offset time is equal or greater to
-     * to the time in the positions
+     * to the time in the track
      */
-    public boolean computePosition(List<GPSPosition> positions, long tolerance) throws GPSPhotoException
+    public boolean computePosition(TrackIndex track, long tolerance)
     {
         long offsetTimeMillis = offsetTime.getTime();
 
-        for (int i = 0; i < positions.size() - 1; ++i)
+        /**
+         * Only two segments can bracket the offset time, the one ending at the first
+         * position at or after the offset time and, when that position lands exactly
+         * on the offset time, the one starting at the last position sharing its time
+         */
+        int lower = track.findTime(0, offsetTimeMillis, true);
+
+        if (lower > 0 && lower < track.size() &&
+            interpolate(track, lower - 1, offsetTimeMillis, tolerance))
         {
-            GPSPosition thisPosition = positions.get(i);
-            GPSPosition nextPosition = positions.get(i + 1);
+            return true;
+        }
 
-            long thisTime = thisPosition.getUTCTime().getTime();
-            long nextTime = nextPosition.getUTCTime().getTime();
+        if (lower < track.size() && track.getTime(lower) == offsetTimeMillis)
+        {
+            int upper = track.findTime(lower, offsetTimeMillis, false);
 
-            if (thisTime == nextTime)
+            if (upper < track.size() &&
+                interpolate(track, upper - 1, offsetTimeMillis, tolerance))
             {
-                continue;
+                return true;
             }
+        }
 
-            if (thisTime > nextTime)
-            {
-                throw new GPSPhotoException("GPS positions are not sorted by increasing time");
-            }
+        LOGGER.info("Did not find a match for photo: " + inputFile.getName());
+        return false;
+    }
 
-            boolean greater = thisTime <= offsetTimeMillis;
-            boolean less = offsetTimeMillis <= nextTime;
-            long timeDelta1 = offsetTimeMillis - thisTime;
-            long timeDelta2 = nextTime - offsetTimeMillis;
+    /**
+     * Linearly interpolate the position between a track position and the next
+     * if both are within tolerance of the offset time
+     */
+    private boolean interpolate(TrackIndex track, int index, long offsetTimeMillis, long tolerance)
+    {
+        long thisTime = track.getTime(index);
+        long nextTime = track.getTime(index + 1);
 
-            boolean timeMatch1 = (timeDelta1 >= 0L) && (timeDelta1 <= tolerance);
-            boolean timeMatch2 = (timeDelta2 >= 0L) && (timeDelta2 <= tolerance);
+        long timeDelta1 = offsetTimeMillis - thisTime;
+        long timeDelta2 = nextTime - offsetTimeMillis;
 
-            /**
-             * Hunt linearly for a matching time slot
-             */
-            if (greater && less && timeMatch1 && timeMatch2)
-            {
-                /**
-                 * Linearly interpolate the position
-                 */
-                double timeDelta = nextTime - thisTime;
-                double timeOffset = offsetTimeMillis - thisTime;
-                double ratio = timeOffset / timeDelta;
+        boolean timeMatch1 = (timeDelta1 >= 0L) && (timeDelta1 <= tolerance);
+        boolean timeMatch2 = (timeDelta2 >= 0L) && (timeDelta2 <= tolerance);
 
-                double newLatitude = (1.0 - ratio) * thisPosition.getLatitude() + ratio * nextPosition.getLatitude();
-                double newLongitude = (1.0 - ratio) * thisPosition.getLongitude() + ratio * nextPosition.getLongitude();
+        if (thisTime == nextTime || !timeMatch1 || !timeMatch2)
+        {
+            return false;
+        }
 
-                setLatitude(newLatitude);
-                setLongitude(newLongitude);
+        double timeDelta = nextTime - thisTime;
+        double timeOffset = offsetTimeMillis - thisTime;
+        double ratio = timeOffset / timeDelta;
 
-                return true;
-            }
-        }
+        double newLatitude = (1.0 - ratio) * track.getLatitude(index) + ratio * track.getLatitude(index + 1);
+        double newLongitude = (1.0 - ratio) * track.getLongitude(index) + ratio * track.getLongitude(index + 1);
 
-        LOGGER.info("Did not find a match for photo: " + inputFile.getName());
-        return false;
+        setLatitude(newLatitude);
+        setLongitude(newLongitude);
+
+        return true;
     }
 
     public String getFormattedCaptureTime()
     {
-        return FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss").format(captureTime);
+        return FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss", WALL_CLOCK_TIME_ZONE).format(captureTime);
     }
 
     public boolean isMatched()
@@ -206,6 +287,14 @@ public class GPSPhoto
         this.matched = matched;
     }
 
+    /**
+     * The number of bytes read from the photo by the last meta data load
+     */
+    public long getMetaDataBytesRead()
+    {
+        return metaDataBytesRead;
+    }
+
     public void setCaptureTime(Date captureTime)
     {
         this.captureTime = captureTime;
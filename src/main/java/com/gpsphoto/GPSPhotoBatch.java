@@ -0,0 +1,432 @@
+package com.gpsphoto;
+
+import org.apache.commons.cli.*;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes every project listed in a CSV manifest in a single JVM, running
+ * several projects at once on shared matching and thumbnail pools and
+ * writing a summary row for each project.
+ *
+ * The manifest has a header row naming command line options, for example
+ * projectname,gpx,photos,outputdir,timephoto,phototime,thumbnails, and a row
+ * per project. Flag options such as thumbnails are set with true or yes and
+ * several GPX files or folders are separated with semicolons.
+ */
+public class GPSPhotoBatch
+{
+    private static final Logger LOGGER = Logger.getLogger(GPSPhotoBatch.class);
+
+    private static final String[] SUMMARY_HEADER = {
+        "Row", "ProjectName", "OutputDir", "Status", "Georeferenced", "Rejected", "Seconds", "Error" };
+
+    private final File manifestFile;
+    private final File summaryFile;
+    private final int projects;
+    private final int cores;
+    private final int thumbnailCores;
+
+    /**
+     * The outcome of processing one manifest row
+     */
+    public static class ProjectResult
+    {
+        private final int row;
+        private final String projectName;
+        private final String outputDir;
+        private final int georeferenced;
+        private final int rejected;
+        private final long millis;
+        private final String error;
+
+        ProjectResult(int row, String projectName, String outputDir, int georeferenced, int rejected, long millis, String error)
+        {
+            this.row = row;
+            this.projectName = projectName;
+            this.outputDir = outputDir;
+            this.georeferenced = georeferenced;
+            this.rejected = rejected;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public int getRow()
+        {
+            return row;
+        }
+
+        public String getProjectName()
+        {
+            return projectName;
+        }
+
+        public boolean isSuccessful()
+        {
+            return error == null;
+        }
+
+        public int getGeoreferenced()
+        {
+            return georeferenced;
+        }
+
+        public int getRejected()
+        {
+            return rejected;
+        }
+
+        public String getError()
+        {
+            return error;
+        }
+    }
+
+    /**
+     * @param manifestFile CSV manifest of projects
+     * @param summaryFile CSV file to write the per project summary to
+     * @param projects the number of projects to process at once
+     * @param cores the size of the shared matching pool
+     * @param thumbnailCores the size of the shared thumbnail pool
+     */
+    public GPSPhotoBatch(File manifestFile, File summaryFile, int projects, int cores, int thumbnailCores)
+    {
+        this.manifestFile = manifestFile;
+        this.summaryFile = summaryFile;
+        this.projects = projects;
+        this.cores = cores;
+        this.thumbnailCores = thumbnailCores;
+    }
+
+    /**
+     * Converts each manifest row into command line arguments for the
+     * options named in the header
+     */
+    List<String[]> readManifest() throws GPSPhotoException
+    {
+        Options options = GPSPhotoProcessor.createOptions();
+        List<String[]> rows = new ArrayList<>();
+
+        try (BufferedReader in = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8);
+             CSVParser parser = CSVFormat.DEFAULT.withHeader().withIgnoreEmptyLines().parse(in))
+        {
+            for (String column: parser.getHeaderMap().keySet())
+            {
+                if (!options.hasOption(column.trim()))
+                {
+                    throw new GPSPhotoException("Unknown option in manifest header: " + column);
+                }
+            }
+
+            for (CSVRecord record: parser)
+            {
+                List<String> args = new ArrayList<>();
+
+                for (String column: parser.getHeaderMap().keySet())
+                {
+                    String value = record.isSet(column) ? StringUtils.trimToNull(record.get(column)) : null;
+                    Option option = options.getOption(column.trim());
+
+                    if (value == null)
+                    {
+                        continue;
+                    }
+
+                    if (!option.hasArg())
+                    {
+                        if (BooleanUtils.toBoolean(value))
+                        {
+                            args.add("-" + option.getOpt());
+                        }
+                    }
+                    else
+                    {
+                        for (String part: StringUtils.split(value, ';'))
+                        {
+                            args.add("-" + option.getOpt());
+                            args.add(part.trim());
+                        }
+                    }
+                }
+
+                rows.add(args.toArray(new String[args.size()]));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new GPSPhotoException("Failed to read batch manifest: " + manifestFile, e);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Processes every project in the manifest and writes the summary,
+     * projects that fail are reported in the summary without stopping the batch
+     */
+    public List<ProjectResult> process() throws GPSPhotoException
+    {
+        List<String[]> rows = readManifest();
+
+        LOGGER.info(String.format("Processing: [%d] projects from: [%s] running: [%d] at once on: [%d] matching cores and: [%d] thumbnail cores",
+            rows.size(), manifestFile, projects, cores, thumbnailCores));
+
+        final ThreadPoolExecutor matchingExecutor = new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        final ThreadPoolExecutor thumbnailExecutor = new ThreadPoolExecutor(thumbnailCores, thumbnailCores, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        ExecutorService projectExecutor = Executors.newFixedThreadPool(projects);
+
+        List<ProjectResult> results = new ArrayList<>(rows.size());
+
+        try
+        {
+            List<Future<ProjectResult>> futures = new ArrayList<>(rows.size());
+
+            for (int i = 0; i < rows.size(); ++i)
+            {
+                final int row = i + 1;
+                final String[] args = rows.get(i);
+
+                futures.add(projectExecutor.submit(new Callable<ProjectResult>()
+                {
+                    @Override
+                    public ProjectResult call()
+                    {
+                        return processProject(row, args, matchingExecutor, thumbnailExecutor);
+                    }
+                }));
+            }
+
+            for (Future<ProjectResult> future: futures)
+            {
+                results.add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new GPSPhotoException("Failed to process batch", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            throw new GPSPhotoException("Interrupted while processing batch", e);
+        }
+        finally
+        {
+            projectExecutor.shutdownNow();
+            matchingExecutor.shutdownNow();
+            thumbnailExecutor.shutdownNow();
+        }
+
+        writeSummary(results);
+
+        return results;
+    }
+
+    private ProjectResult processProject(int row, String[] args,
+                                         ThreadPoolExecutor matchingExecutor,
+                                         ThreadPoolExecutor thumbnailExecutor)
+    {
+        long start = System.currentTimeMillis();
+        GPSPhotoProcessor processor = null;
+
+        try
+        {
+            CommandLine commands = new DefaultParser().parse(GPSPhotoProcessor.createOptions(), args);
+            processor = GPSPhotoProcessor.fromCommandLine(commands);
+            processor.setExecutors(matchingExecutor, thumbnailExecutor);
+            processor.process();
+
+            long millis = System.currentTimeMillis() - start;
+            LOGGER.info(String.format("Completed project: [%s] row: [%d] %s in: [%d] seconds",
+                processor.getProjectName(), row, processor.getSummary(), millis / 1000L));
+
+            return new ProjectResult(row, processor.getProjectName(), processor.getOutputDir(),
+                processor.getGeoreferencedCount(), processor.getRejectedCount(), millis, null);
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error(String.format("Failed to process project on manifest row: [%d]", row), t);
+
+            return new ProjectResult(row,
+                processor == null ? null : processor.getProjectName(),
+                processor == null ? null : processor.getOutputDir(),
+                0, 0, System.currentTimeMillis() - start, t.toString());
+        }
+        finally
+        {
+            /**
+             * Finished projects are removed from JMX so a long manifest doesn't
+             * leave a bean for every stage of every project
+             */
+            if (processor != null && processor.getMetrics() != null)
+            {
+                processor.getMetrics().unregisterMBeans();
+            }
+        }
+    }
+
+    private void writeSummary(List<ProjectResult> results) throws GPSPhotoException
+    {
+        try (BufferedWriter out = Files.newBufferedWriter(summaryFile.toPath(), StandardCharsets.UTF_8);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(SUMMARY_HEADER)))
+        {
+            for (ProjectResult result: results)
+            {
+                printer.printRecord(
+                    result.row,
+                    StringUtils.defaultString(result.projectName),
+                    StringUtils.defaultString(result.outputDir),
+                    result.isSuccessful() ? "OK" : "FAILED",
+                    result.georeferenced,
+                    result.rejected,
+                    String.format(Locale.ROOT, "%.1f", result.millis / 1000.0),
+                    StringUtils.defaultString(result.error));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new GPSPhotoException("Failed to write batch summary: " + summaryFile, e);
+        }
+
+        LOGGER.info("Saved batch summary to: " + summaryFile);
+    }
+
+    public static void main(String[] args)
+    {
+        long start = System.currentTimeMillis();
+        boolean successful = true;
+
+        try
+        {
+            CommandLine commands = parseCommandLine(args);
+
+            File manifestFile = new File(commands.getOptionValue("manifest"));
+            File summaryFile = commands.hasOption("summary") ?
+                new File(commands.getOptionValue("summary")) :
+                new File(manifestFile.getAbsoluteFile().getParentFile(),
+                    FilenameUtils.getBaseName(manifestFile.getName()) + "_summary.csv");
+
+            int cores = parseCount(commands, "cores", Runtime.getRuntime().availableProcessors());
+            int thumbnailCores = parseCount(commands, "thumbnailcores", cores);
+            int projects = parseCount(commands, "projects", 2);
+
+            GPSPhotoBatch batch = new GPSPhotoBatch(manifestFile, summaryFile, projects, cores, thumbnailCores);
+
+            for (ProjectResult result: batch.process())
+            {
+                successful &= result.isSuccessful();
+            }
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("Failed to process batch: " + t.toString(), t);
+            System.exit(1);
+        }
+
+        long end = System.currentTimeMillis();
+        int seconds = (int) ((end - start) / 1000L);
+        LOGGER.info(String.format("Batch processing complete taking: [%d] seconds", seconds));
+
+        System.exit(successful ? 0 : 1);
+    }
+
+    private static int parseCount(CommandLine commands, String option, int defaultCount) throws GPSPhotoException
+    {
+        if (!commands.hasOption(option))
+        {
+            return defaultCount;
+        }
+
+        try
+        {
+            int count = Integer.parseInt(commands.getOptionValue(option));
+
+            if (count <= 0)
+            {
+                throw new GPSPhotoException(String.format("Invalid %s: %d", option, count));
+            }
+
+            return count;
+        }
+        catch (NumberFormatException n)
+        {
+            throw new GPSPhotoException(String.format("Invalid %s: %s", option, commands.getOptionValue(option)));
+        }
+    }
+
+    private static CommandLine parseCommandLine(String[] args)
+    {
+        Options options = new Options();
+
+        options.addOption(Option.builder("manifest")
+              .argName("manifest file").hasArg().required(true)
+              .desc("CSV file with a row of command line options for each project").build());
+
+        options.addOption(Option.builder("summary")
+              .argName("summary file").hasArg()
+              .desc("CSV file to write the result of each project to, defaults to <manifest>_summary.csv").build());
+
+        options.addOption(Option.builder("projects")
+              .argName("concurrent projects").hasArg()
+              .desc("the number of projects to process at once [2]").build());
+
+        options.addOption(Option.builder("cores")
+              .argName("cores to use").hasArg()
+              .desc("the number of CPU cores shared by all projects for photo matching").build());
+
+        options.addOption(Option.builder("thumbnailcores")
+              .argName("cores to use for thumbnails").hasArg()
+              .desc("the number of CPU cores shared by all projects for writing thumbnails, defaults to the matching cores").build());
+
+        options.addOption(Option.builder("help").required(false)
+              .desc("show help information").build());
+
+        CommandLine cmd = null;
+
+        try
+        {
+            CommandLineParser parser = new DefaultParser();
+            cmd = parser.parse(options, args);
+
+            if (cmd.hasOption("help"))
+            {
+                LOGGER.info("Help was requested");
+                new HelpFormatter().printHelp("GPSPhotoBatch", options);
+                System.exit(1);
+            }
+        }
+        catch (ParseException e)
+        {
+            LOGGER.error("Failed to parse command line: " + e.getMessage());
+            new HelpFormatter().printHelp("GPSPhotoBatch", options);
+            System.exit(1);
+        }
+
+        return cmd;
+    }
+}
@@ -23,6 +23,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -58,6 +59,7 @@ public class GPSPhotoFrame extends JFrame
     private JTextField outputDirTextField = new JTextField();
     private JTextField timeToleranceTextField = new JTextField();
     private JTextField coresTextField = new JTextField();
+    private JTextField thumbnailCoresTextField = new JTextField();
     private JCheckBox recursivePhotosCheckBox = new JCheckBox("Recursive search");
     private JCheckBox exportShapeCheckBox = new JCheckBox("Export shape file");
     private JCheckBox exportKMLCheckBox = new JCheckBox("Export kml file");
@@ -73,6 +75,11 @@ public class GPSPhotoFrame extends JFrame
 
     private JProgressBar progressBar = new JProgressBar();
 
+    /**
+     * Metrics of the last run which stay visible through JMX until the next run
+     */
+    private volatile ProcessingMetrics lastMetrics = null;
+
     public static String VERSION = "1.0.11 (locale fixes)";
 
     private FastDateFormat logDateFormat = FastDateFormat.getInstance("dd-MM-yyyy HH:mm:ss");
@@ -278,6 +285,16 @@ public class GPSPhotoFrame extends JFrame
 
         createStrut(10);
 
+        createLabel("Number of CPU cores to use for thumbnails (blank to use the cores above):");
+
+        c.weightx = 1.0;
+        c.gridwidth = GridBagConstraints.REMAINDER;
+        thumbnailCoresTextField.setMinimumSize(new Dimension(100, 30));
+        configGridBag.setConstraints(thumbnailCoresTextField, c);
+        configTopPanel.add(thumbnailCoresTextField);
+
+        createStrut(10);
+
         createLabel("Export options:");
 
         createStrut(5);
@@ -715,13 +732,22 @@ public class GPSPhotoFrame extends JFrame
                     @Override
                     public void run()
                     {
+                        GPSPhotoProcessor processor = null;
+
                         try
                         {
                             addLog("INFO", "Commencing processing");
                             progressBar.setValue(0);
-                            GPSPhotoProcessor processor = new GPSPhotoProcessor(
+
+                            if (lastMetrics != null)
+                            {
+                                lastMetrics.unregisterMBeans();
+                                lastMetrics = null;
+                            }
+
+                            processor = new GPSPhotoProcessor(
                                 fileNameTextField.getText(),
-                                gpxFileTextField.getText(),
+                                Collections.singletonList(gpxFileTextField.getText()),
                                 photosDirTextField.getText(),
                                 thumbnailsCheckBox.isSelected(),
                                 Long.parseLong(timeToleranceTextField.getText()),
@@ -732,7 +758,8 @@ public class GPSPhotoFrame extends JFrame
                                 outputDirTextField.getText(),
                                 kmlFile,
                                 shapeFile,
-                                Integer.parseInt(coresTextField.getText()));
+                                Integer.parseInt(coresTextField.getText()),
+                                Integer.parseInt(StringUtils.defaultIfBlank(thumbnailCoresTextField.getText(), coresTextField.getText())));
 
                             if (saveGPXTrackCheckBox.isSelected())
                             {
@@ -774,6 +801,11 @@ public class GPSPhotoFrame extends JFrame
                         }
                         finally
                         {
+                            if (processor != null)
+                            {
+                                lastMetrics = processor.getMetrics();
+                            }
+
                             processButton.setEnabled(true);
                         }
                     }
@@ -839,7 +871,33 @@ public class GPSPhotoFrame extends JFrame
             }
         }
 
+        validateCores(coresTextField.getText(), "Cores", false, validationErrors);
+        validateCores(thumbnailCoresTextField.getText(), "Thumbnail cores", true, validationErrors);
+    }
+
+    private static void validateCores(String cores, String name, boolean optional, List<String> validationErrors)
+    {
+        if (StringUtils.isBlank(cores))
+        {
+            if (!optional)
+            {
+                validationErrors.add("No " + name.toLowerCase() + " specified");
+            }
+
+            return;
+        }
 
+        try
+        {
+            if (Integer.parseInt(cores) <= 0)
+            {
+                validationErrors.add(name + " must be greater than zero");
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            validationErrors.add(name + " must be an integer");
+        }
     }
 
     public void addLog(String logType, String message)
@@ -877,6 +935,21 @@ public class GPSPhotoFrame extends JFrame
         }
     }
 
+    /**
+     * Shows progress as ongoing while the total amount of work is unknown
+     */
+    public void setProcessingIndeterminate(boolean indeterminate)
+    {
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                progressBar.setIndeterminate(indeterminate);
+            }
+        });
+    }
+
     public void setProcessingComplete(double percentComplete)
     {
         SwingUtilities.invokeLater(new Runnable()
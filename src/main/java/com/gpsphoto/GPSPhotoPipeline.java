@@ -0,0 +1,458 @@
+package com.gpsphoto;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads, matches and writes thumbnails for photos on executors, loading and
+ * matching on one pool and writing thumbnails on a second pool, completing
+ * as soon as the last photo has finished
+ */
+public class GPSPhotoPipeline
+{
+    private static final Logger LOGGER = Logger.getLogger(GPSPhotoPipeline.class);
+
+    /**
+     * Matched photos waiting for thumbnails per thumbnail thread before matching blocks
+     */
+    private static final int THUMBNAIL_QUEUE_SIZE_PER_CORE = 4;
+
+    /**
+     * Milliseconds between logging stage statistics while processing
+     */
+    private static final long STATISTICS_REPORT_INTERVAL = 5000L;
+
+    /**
+     * Receives progress as each photo finishes processing, the total is the
+     * number of photos submitted so far
+     */
+    public interface ProgressListener
+    {
+        void photoProcessed(int processedCount, int totalCount);
+    }
+
+    private final TrackIndex track;
+    private final long tolerance;
+    private final long timeOffset;
+    private final int cores;
+    private final int thumbnailCores;
+    private final PhotoMetaDataCache metaDataCache;
+    private final ProgressListener listener;
+
+    private final List<GPSPhoto> completePhotos = Collections.synchronizedList(new ArrayList<GPSPhoto>());
+    private final List<GPSPhoto> failedPhotos = Collections.synchronizedList(new ArrayList<GPSPhoto>());
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private ThreadPoolExecutor matchingExecutor;
+    private ThreadPoolExecutor thumbnailExecutor;
+    private boolean sharedExecutors = false;
+    private Semaphore thumbnailPermits;
+
+    private ProcessingMetrics metrics = new ProcessingMetrics(null);
+    private StageStatistics metaDataStatistics;
+    private StageStatistics matchingStatistics;
+    private StageStatistics thumbnailStatistics;
+
+    /**
+     * Photos submitted so far and whether more photos may still be submitted
+     */
+    private final AtomicInteger submitted = new AtomicInteger();
+    private volatile boolean submitting = true;
+
+    public GPSPhotoPipeline(TrackIndex track,
+                            long tolerance,
+                            long timeOffset,
+                            int cores,
+                            int thumbnailCores,
+                            PhotoMetaDataCache metaDataCache,
+                            ProgressListener listener)
+    {
+        this.track = track;
+        this.tolerance = tolerance;
+        this.timeOffset = timeOffset;
+        this.cores = cores;
+        this.thumbnailCores = thumbnailCores;
+        this.metaDataCache = metaDataCache;
+        this.listener = listener;
+    }
+
+    /**
+     * Runs the pipeline on executors shared with other pipelines instead of
+     * its own, the executors are left running when processing completes
+     */
+    public void setExecutors(ThreadPoolExecutor matchingExecutor, ThreadPoolExecutor thumbnailExecutor)
+    {
+        this.matchingExecutor = matchingExecutor;
+        this.thumbnailExecutor = thumbnailExecutor;
+        this.sharedExecutors = true;
+    }
+
+    /**
+     * Records the metadata, matching and thumbnails stages, must be called before start
+     */
+    public void setMetrics(ProcessingMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Processes the photos returning once every photo is complete or failed,
+     * throwing if meta data could not be loaded for any photo
+     */
+    public void process(List<GPSPhoto> photos) throws GPSPhotoException
+    {
+        start();
+
+        for (GPSPhoto photo: photos)
+        {
+            submit(photo);
+        }
+
+        await();
+    }
+
+    /**
+     * Starts the executors so photos can be submitted as they are found
+     */
+    public void start()
+    {
+        if (!sharedExecutors)
+        {
+            matchingExecutor = new ThreadPoolExecutor(cores, cores, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+
+            /**
+             * Pool threads are only started when work arrives so no thumbnail
+             * threads run when thumbnails are not being written
+             */
+            int thumbnailThreads = Math.max(1, thumbnailCores);
+            thumbnailExecutor = new ThreadPoolExecutor(thumbnailThreads, thumbnailThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        }
+
+        int matchingThreads = matchingExecutor.getMaximumPoolSize();
+        int thumbnailThreads = thumbnailExecutor.getMaximumPoolSize();
+        thumbnailPermits = new Semaphore(thumbnailThreads * (THUMBNAIL_QUEUE_SIZE_PER_CORE + 1));
+
+        /**
+         * Meta data is loaded on the matching threads so both stages share a queue
+         */
+        metaDataStatistics = metrics.addStage(new StageStatistics("metadata", matchingThreads, matchingExecutor.getQueue()));
+        matchingStatistics = metrics.addStage(new StageStatistics("matching", matchingThreads, matchingExecutor.getQueue()));
+        thumbnailStatistics = metrics.addStage(
+            new StageStatistics("thumbnails", thumbnailCores > 0 ? thumbnailThreads : 0, thumbnailExecutor.getQueue()));
+    }
+
+    /**
+     * Queues a photo for loading and matching, may be called from any thread
+     * between start and await
+     */
+    public void submit(final GPSPhoto photo)
+    {
+        submitted.incrementAndGet();
+
+        matchingExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                matchPhoto(photo);
+            }
+        });
+    }
+
+    /**
+     * Waits for every submitted photo to complete or fail, throwing if meta
+     * data could not be loaded for any photo
+     */
+    public void await() throws GPSPhotoException
+    {
+        submitting = false;
+
+        if (processed.get() == submitted.get())
+        {
+            completion.complete(null);
+        }
+
+        if (matchingStatistics.getProcessed() == submitted.get())
+        {
+            metaDataStatistics.complete();
+            matchingStatistics.complete();
+        }
+
+        try
+        {
+            completion.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof GPSPhotoException)
+            {
+                throw (GPSPhotoException) e.getCause();
+            }
+
+            throw new GPSPhotoException("Failed to process photos", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            throw new GPSPhotoException("Interrupted while processing photos", e);
+        }
+        finally
+        {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops the executors unless they are shared, abandoning any queued
+     * photos, called by await and by callers that fail before reaching it
+     */
+    public void shutdown()
+    {
+        if (!sharedExecutors)
+        {
+            matchingExecutor.shutdownNow();
+            thumbnailExecutor.shutdownNow();
+        }
+
+        metaDataStatistics.complete();
+        matchingStatistics.complete();
+        thumbnailStatistics.complete();
+    }
+
+    /**
+     * The number of photos complete or failed so far
+     */
+    public int getProcessed()
+    {
+        return processed.get();
+    }
+
+    public List<GPSPhoto> getCompletePhotos()
+    {
+        return completePhotos;
+    }
+
+    public List<GPSPhoto> getFailedPhotos()
+    {
+        return failedPhotos;
+    }
+
+    public StageStatistics getMetaDataStatistics()
+    {
+        return metaDataStatistics;
+    }
+
+    public StageStatistics getMatchingStatistics()
+    {
+        return matchingStatistics;
+    }
+
+    public StageStatistics getThumbnailStatistics()
+    {
+        return thumbnailStatistics;
+    }
+
+    /**
+     * Loads meta data and matches a photo passing matched photos needing a
+     * thumbnail on to the thumbnail executor
+     */
+    private void matchPhoto(final GPSPhoto photo)
+    {
+        /**
+         * Photos still queued on shared executors when a run is aborted are skipped
+         */
+        if (completion.isDone())
+        {
+            return;
+        }
+
+        try
+        {
+            long start = System.nanoTime();
+            long bytes = loadMetaData(photo);
+            metaDataStatistics.photoProcessed(System.nanoTime() - start, bytes);
+            photo.applyTimeDelta(timeOffset);
+        }
+        catch (Throwable t)
+        {
+            /**
+             * Photos without meta data abort the whole run
+             */
+            completion.completeExceptionally(t);
+            return;
+        }
+
+        try
+        {
+            long start = System.nanoTime();
+            boolean matched = photo.computePosition(track, tolerance);
+
+            if (matchingStatistics.photoProcessed(System.nanoTime() - start, 0L) == submitted.get() && !submitting)
+            {
+                metaDataStatistics.complete();
+                matchingStatistics.complete();
+            }
+
+            if (!matched)
+            {
+                photoFinished(photo, false);
+                return;
+            }
+
+            photo.setMatched(true);
+
+            if (!photo.hasThumbnailFile())
+            {
+                photoFinished(photo, true);
+                return;
+            }
+
+            /**
+             * Blocks while the thumbnail stage is behind
+             */
+            thumbnailPermits.acquire();
+
+            thumbnailExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    writeThumbnail(photo);
+                }
+            });
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("Failed to process image", t);
+            photoFinished(photo, false);
+        }
+    }
+
+    /**
+     * Uses the cached capture time for unchanged photos, otherwise reads
+     * the photo and caches its capture time, returning the bytes read
+     */
+    private long loadMetaData(GPSPhoto photo) throws GPSPhotoException
+    {
+        if (metaDataCache == null)
+        {
+            photo.loadMetaData();
+            return photo.getMetaDataBytesRead();
+        }
+
+        Date captureTime = metaDataCache.getCaptureTime(photo.getInputFile());
+
+        if (captureTime != null)
+        {
+            photo.setCaptureTime(captureTime);
+            return 0L;
+        }
+
+        photo.loadMetaData();
+        metaDataCache.putCaptureTime(photo.getInputFile(), photo.getCaptureTime());
+        return photo.getMetaDataBytesRead();
+    }
+
+    private void writeThumbnail(GPSPhoto photo)
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            /**
+             * Thumbnails of unchanged photos with unchanged settings are reused
+             */
+            if (metaDataCache == null ||
+                !metaDataCache.isThumbnailCurrent(photo.getInputFile(), photo.getThumbnailFile(), photo.getThumbnailSettings()))
+            {
+                photo.computeThumbnail();
+
+                if (metaDataCache != null)
+                {
+                    metaDataCache.putThumbnail(photo.getInputFile(), photo.getThumbnailFile(), photo.getThumbnailSettings());
+                }
+
+                thumbnailStatistics.addBytesWritten(photo.getThumbnailFile().length());
+                thumbnailStatistics.photoProcessed(System.nanoTime() - start, photo.getInputFile().length());
+            }
+            else
+            {
+                thumbnailStatistics.photoProcessed(System.nanoTime() - start, 0L);
+            }
+
+            photoFinished(photo, true);
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("Failed to write thumbnail", t);
+            thumbnailStatistics.photoProcessed(System.nanoTime() - start, 0L);
+            photoFinished(photo, false);
+        }
+        finally
+        {
+            thumbnailPermits.release();
+        }
+    }
+
+    /**
+     * Records the final state of a photo, pushing progress to the listener and
+     * completing the pipeline once the last photo has finished
+     */
+    private void photoFinished(GPSPhoto photo, boolean complete)
+    {
+        if (complete)
+        {
+            completePhotos.add(photo);
+        }
+        else
+        {
+            failedPhotos.add(photo);
+        }
+
+        int processedCount = processed.incrementAndGet();
+        int totalCount = submitted.get();
+
+        if (listener != null)
+        {
+            listener.photoProcessed(processedCount, totalCount);
+        }
+
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+
+        if (now - last >= STATISTICS_REPORT_INTERVAL && lastReport.compareAndSet(last, now))
+        {
+            LOGGER.info(matchingStatistics.toString());
+
+            if (thumbnailStatistics.getThreads() > 0)
+            {
+                LOGGER.info(thumbnailStatistics.toString());
+            }
+        }
+
+        /**
+         * Photos can finish before discovery does so completion also waits
+         * for await to be called
+         */
+        if (processedCount == totalCount && !submitting)
+        {
+            completion.complete(null);
+        }
+    }
+}
@@ -1,10 +1,5 @@
 package com.gpsphoto;
 
-import com.hs.gpxparser.GPXParser;
-import com.hs.gpxparser.modal.GPX;
-import com.hs.gpxparser.modal.Track;
-import com.hs.gpxparser.modal.TrackSegment;
-import com.hs.gpxparser.modal.Waypoint;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
@@ -14,23 +9,22 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.log4j.Logger;
-import org.geotools.data.DefaultTransaction;
+import org.geotools.data.FeatureWriter;
 import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapeFileIndexer;
 import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.data.shapefile.ShapefileDataStoreFactory;
-import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.data.simple.SimpleFeatureStore;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.data.shapefile.files.ShpFiles;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTSFactoryFinder;
-import org.geotools.xml.XMLUtils;
+import org.geotools.util.NullProgressListener;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GPSPhotoProcessor
 {
@@ -38,8 +32,7 @@ public class GPSPhotoProcessor
 
     private final String projectName;
 
-    private final String gpxFile;
-    private GPX gpxData;
+    private final List<String> gpxFiles;
     private final String photosDir;
     private final boolean recursive;
 
@@ -55,22 +48,59 @@ public class GPSPhotoProcessor
     private final String outputDir;
 
     private final int cores;
+    private final int thumbnailCores;
 
     private final String kmlFile;
     private final String shapeFile;
 
+    private List<String> photoExtensions = PhotoFinder.DEFAULT_EXTENSIONS;
+    private List<String> photoIncludes = Collections.emptyList();
+    private List<String> photoExcludes = Collections.emptyList();
+
     private List<GPSPhoto> photos = new ArrayList<>();
-    private List<GPSPosition> positions = new ArrayList<>();
+    private TrackIndex track;
     private GPSPhotoFrame logFrame = null;
+    private PhotoMetaDataCache metaDataCache;
+    private ProcessingMetrics metrics = null;
+    private volatile PhotoFolderWatcher watcher = null;
     private String summary;
+    private int georeferencedCount = 0;
+    private int rejectedCount = 0;
+
+    private ThreadPoolExecutor matchingExecutor = null;
+    private ThreadPoolExecutor thumbnailExecutor = null;
 
     private final Properties properties = new Properties();
 
-    private FastDateFormat dateFormat = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss");
+    /**
+     * Milliseconds a new photo must be left unchanged before it is processed in watch mode
+     */
+    private static final long WATCH_QUIET_PERIOD = 2000L;
+
+    /**
+     * Photos are found in parallel so photos with the same capture time are
+     * ordered by file to keep the outputs stable
+     */
+    private static final Comparator<GPSPhoto> CAPTURE_TIME_ORDER = new Comparator<GPSPhoto>()
+    {
+        @Override
+        public int compare(GPSPhoto photo1, GPSPhoto photo2)
+        {
+            int result = photo1.getCaptureTime().compareTo(photo2.getCaptureTime());
+            return result != 0 ? result : photo1.getInputFile().compareTo(photo2.getInputFile());
+        }
+    };
+
+    /**
+     * Folder searches mostly wait on the file system so use at least this many threads
+     */
+    private static final int MIN_SEARCH_THREADS = 4;
+
+    private FastDateFormat dateFormat = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss", GPSPhoto.WALL_CLOCK_TIME_ZONE);
 
     public GPSPhotoProcessor(
                 String projectName,
-                String gpxFile,
+                List<String> gpxFiles, // GPX files or directories of GPX files
                 String photosDir,
                 boolean thumbnails,
                 long tolerance,
@@ -81,10 +111,11 @@ public class GPSPhotoProcessor
                 String outputDir,
                 String kmlFile, // may be null
                 String shapeFile,
-                int cores) throws GPSPhotoException, IOException
+                int cores,
+                int thumbnailCores) throws GPSPhotoException, IOException
     {
         this.projectName = projectName;
-        this.gpxFile = gpxFile;
+        this.gpxFiles = gpxFiles;
         this.photosDir = photosDir;
         this.thumbnails = thumbnails;
         this.tolerance = tolerance;
@@ -96,6 +127,7 @@ public class GPSPhotoProcessor
         this.kmlFile = kmlFile;
         this.shapeFile = shapeFile;
         this.cores = cores;
+        this.thumbnailCores = thumbnailCores;
 
         if (Objects.equals(photosDir, outputDir))
         {
@@ -129,20 +161,15 @@ public class GPSPhotoProcessor
         }
     }
 
-    private void loadGPX()
+    /**
+     * Loads the track points of every GPX file into a single track index
+     */
+    private void loadGPX() throws GPSPhotoException
     {
-        try
-        {
-            GPXParser p = new GPXParser();
-            FileInputStream in = new FileInputStream(gpxFile);
-            gpxData = p.parseGPX(in);
-
-            LOGGER.info(String.format("Successfully parsed GPX file: [%s]", gpxFile));
-        }
-        catch (Throwable t)
-        {
-            LOGGER.error(String.format("Failed to parse GPX file from: [%s]", gpxFile), t);
-        }
+        List<File> files = GPXTrackLoader.findGPXFiles(gpxFiles);
+        GPXTrackLoader loader = new GPXTrackLoader(new File(outputDir), cores);
+        loader.setMetrics(metrics);
+        track = loader.load(files);
     }
 
 	public static void main(String [] args)
@@ -154,104 +181,151 @@ public class GPSPhotoProcessor
             CommandLine commands = parseCommandLine(args);
 
             /**
-             * Extract parameters
-             */
-            String projectName = commands.getOptionValue("projectname");
-            String gpxFile = commands.getOptionValue("gpx");
-            String photosDir = commands.getOptionValue("photos");
-            boolean recursive = commands.hasOption("recursive");
-            boolean thumbnails = commands.hasOption("thumbnails");
-            String timePhoto = commands.getOptionValue("timephoto");
-            String photoTime = commands.getOptionValue("phototime");
-            String timeZoneOffset = commands.getOptionValue("timezoneoffset");
-            String outputDir = commands.getOptionValue("outputdir");
-            long tolerance = 2000L;
-
-            /**
-             * TODO Add distance tolerance
+             * Create the worker
              */
+            GPSPhotoProcessor gpsPhotoProcessor = fromCommandLine(commands);
 
-            String kmlFile = null;
-            String shapeFile = null;
+            gpsPhotoProcessor.process();
 
-            if (commands.hasOption("kmlfile"))
+            if (commands.hasOption("watch"))
             {
-                kmlFile = commands.getOptionValue("kmlfile");
+                gpsPhotoProcessor.watch();
             }
+        }
+        catch (Throwable t)
+        {
+            LOGGER.error("Failed to process GPS photos: " + t.toString(), t);
+            System.exit(1);
+        }
 
-            if (commands.hasOption("shapefile"))
-            {
-                shapeFile = commands.getOptionValue("shapefile");
-            }
+        long end = System.currentTimeMillis();
+        int seconds = (int) ((end - start) / 1000L);
+        LOGGER.info(String.format("Image processing complete taking: [%d] seconds", seconds));
+
+        System.exit(0);
 
-            int cores = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Creates a processor from parsed command line options
+     */
+    static GPSPhotoProcessor fromCommandLine(CommandLine commands) throws GPSPhotoException, IOException
+    {
+        /**
+         * Extract parameters
+         */
+        String projectName = commands.getOptionValue("projectname");
+        List<String> gpxFiles = Arrays.asList(commands.getOptionValues("gpx"));
+        String photosDir = commands.getOptionValue("photos");
+        boolean recursive = commands.hasOption("recursive");
+        boolean thumbnails = commands.hasOption("thumbnails");
+        String timePhoto = commands.getOptionValue("timephoto");
+        String photoTime = commands.getOptionValue("phototime");
+        String timeZoneOffset = commands.getOptionValue("timezoneoffset", "0");
+        String outputDir = commands.getOptionValue("outputdir");
+        long tolerance = 2000L;
+
+        /**
+         * TODO Add distance tolerance
+         */
+
+        String kmlFile = null;
+        String shapeFile = null;
+
+        if (commands.hasOption("kmlfile"))
+        {
+            kmlFile = commands.getOptionValue("kmlfile");
+        }
+
+        if (commands.hasOption("shapefile"))
+        {
+            shapeFile = commands.getOptionValue("shapefile");
+        }
 
-            if (commands.hasOption("cores"))
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        if (commands.hasOption("cores"))
+        {
+            try
             {
-                try
-                {
-                    cores = Integer.parseInt(commands.getOptionValue("cores"));
+                cores = Integer.parseInt(commands.getOptionValue("cores"));
 
-                    if (cores <= 0)
-                    {
-                        throw new GPSPhotoException("Invalid core count: " + cores);
-                    }
-                }
-                catch (NumberFormatException n)
+                if (cores <= 0)
                 {
-                    throw new GPSPhotoException("Invalid core count: " + commands.getOptionValue("cores"));
+                    throw new GPSPhotoException("Invalid core count: " + cores);
                 }
             }
+            catch (NumberFormatException n)
+            {
+                throw new GPSPhotoException("Invalid core count: " + commands.getOptionValue("cores"));
+            }
+        }
 
-            if (commands.hasOption("tolerance"))
+        int thumbnailCores = cores;
+
+        if (commands.hasOption("thumbnailcores"))
+        {
+            try
             {
-                try
-                {
-                    tolerance = Long.parseLong(commands.getOptionValue("tolerance"));
+                thumbnailCores = Integer.parseInt(commands.getOptionValue("thumbnailcores"));
 
-                    if (tolerance <= 0)
-                    {
-                        throw new GPSPhotoException("Invalid tolerance: " + tolerance);
-                    }
-                }
-                catch (NumberFormatException n)
+                if (thumbnailCores <= 0)
                 {
-                    throw new GPSPhotoException("Invalid tolerance: " + commands.getOptionValue("tolerance"));
+                    throw new GPSPhotoException("Invalid thumbnail core count: " + thumbnailCores);
                 }
             }
-
-            /**
-             * Create the worker
-             */
-            GPSPhotoProcessor gpsPhotoProcessor = new GPSPhotoProcessor(
-                    projectName,
-                    gpxFile,
-                    photosDir,
-                    thumbnails,
-                    tolerance,
-                    timePhoto,
-                    photoTime,
-                    timeZoneOffset,
-                    recursive,
-                    outputDir,
-                    kmlFile,
-                    shapeFile,
-                    cores);
-
-            gpsPhotoProcessor.process();
+            catch (NumberFormatException n)
+            {
+                throw new GPSPhotoException("Invalid thumbnail core count: " + commands.getOptionValue("thumbnailcores"));
+            }
         }
-        catch (Throwable t)
+
+        if (commands.hasOption("tolerance"))
         {
-            LOGGER.error("Failed to process GPS photos: " + t.toString(), t);
-            System.exit(1);
-        }
+            try
+            {
+                tolerance = Long.parseLong(commands.getOptionValue("tolerance"));
 
-        long end = System.currentTimeMillis();
-        int seconds = (int) ((end - start) / 1000L);
-        LOGGER.info(String.format("Image processing complete taking: [%d] seconds", seconds));
+                if (tolerance <= 0)
+                {
+                    throw new GPSPhotoException("Invalid tolerance: " + tolerance);
+                }
+            }
+            catch (NumberFormatException n)
+            {
+                throw new GPSPhotoException("Invalid tolerance: " + commands.getOptionValue("tolerance"));
+            }
+        }
 
-        System.exit(0);
+        GPSPhotoProcessor processor = new GPSPhotoProcessor(
+                projectName,
+                gpxFiles,
+                photosDir,
+                thumbnails,
+                tolerance,
+                timePhoto,
+                photoTime,
+                timeZoneOffset,
+                recursive,
+                outputDir,
+                kmlFile,
+                shapeFile,
+                cores,
+                thumbnailCores);
+
+        List<String> extensions = commands.hasOption("extensions") ?
+            Arrays.asList(StringUtils.split(commands.getOptionValue("extensions"), ", ")) :
+            PhotoFinder.DEFAULT_EXTENSIONS;
+
+        processor.setPhotoFilters(extensions, getOptionValues(commands, "include"), getOptionValues(commands, "exclude"));
+
+        return processor;
+    }
 
+    private static List<String> getOptionValues(CommandLine commands, String option)
+    {
+        String[] values = commands.getOptionValues(option);
+        return values == null ? Collections.<String>emptyList() : Arrays.asList(values);
     }
 
     public void process() throws GPSPhotoException, IOException
@@ -262,12 +336,24 @@ public class GPSPhotoProcessor
         }
 
         /**
-         * Parse the GPX file
+         * Stage statistics are visible through JMX while processing, until
+         * the next run replaces them
+         */
+        if (metrics != null)
+        {
+            metrics.unregisterMBeans();
+        }
+
+        metrics = new ProcessingMetrics(projectName);
+        metrics.registerMBeans();
+
+        /**
+         * Load and merge the tracks from the track caches or GPX files
          */
         loadGPX();
 
         /**
-         * Compute the positions and their local time offsets
+         * Report the loaded positions
          */
         computePositions();
 
@@ -291,13 +377,18 @@ public class GPSPhotoProcessor
          */
         createShapeFile();
 
+        /**
+         * Save the stage metrics
+         */
+        writeMetrics();
+
         if (logFrame != null)
         {
             logFrame.saveLog(new File(outputDir, "processing_log.txt"));
         }
     }
 
-    private SimpleFeatureType createFeatureType()
+    private static SimpleFeatureType createFeatureType(boolean thumbnails)
     {
         SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
         builder.setName("Location");
@@ -319,6 +410,10 @@ public class GPSPhotoProcessor
         return builder.buildFeatureType();
     }
 
+    /**
+     * Streams features for matched photos straight into the shape file and
+     * then builds the spatial index from the written file
+     */
     private void createShapeFile() throws GPSPhotoException, IOException
     {
         if (StringUtils.isBlank(shapeFile))
@@ -326,206 +421,239 @@ public class GPSPhotoProcessor
             return;
         }
 
-        FastDateFormat fdf = FastDateFormat.getInstance("dd/MM/yyyy HH:mm:ss");
-
-        SimpleFeatureType featureType = createFeatureType();
+        StageStatistics shapeFileStatistics = createOutputStage("shapefile");
+        File outputShapeFile = new File(outputDir, shapeFile);
 
-        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+        writeShapeFile(outputShapeFile, photos, thumbnails, false);
 
-        DefaultFeatureCollection collection = new DefaultFeatureCollection("Photos");
+        shapeFileStatistics.addBytesWritten(getShapeFileSize(outputShapeFile));
+        shapeFileStatistics.complete();
+    }
 
-        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
+    /**
+     * The total size of the files making up a shape file
+     */
+    private static long getShapeFileSize(File outputShapeFile)
+    {
+        String baseName = FilenameUtils.removeExtension(outputShapeFile.getName());
+        long size = 0L;
 
-        for (GPSPhoto photo: photos)
+        for (String extension: Arrays.asList("shp", "shx", "dbf", "prj", "qix", "fix"))
         {
-            if (!photo.isMatched())
-            {
-                continue;
-            }
+            size += new File(outputShapeFile.getParentFile(), baseName + "." + extension).length();
+        }
 
-            String name = FilenameUtils.removeExtension(photo.getInputFile().getName());
-            Point point = geometryFactory.createPoint(new Coordinate(photo.getLongitude(), photo.getLatitude()));
+        return size;
+    }
 
-            builder.set("the_geom", point);
-            builder.set("Name", name);
+    /**
+     * Adds a stage for writing an output file of the matched photos
+     */
+    private StageStatistics createOutputStage(String name)
+    {
+        StageStatistics statistics = metrics == null ? new StageStatistics(name) : metrics.createStage(name);
+        int matched = 0;
 
-            if (thumbnails)
+        for (GPSPhoto photo: photos)
+        {
+            if (photo.isMatched())
             {
-                builder.set("Image", photo.getInputFile().getName());
+                ++matched;
             }
-
-            builder.set("Date", fdf.format(photo.getOffsetTime()));
-            builder.set("Latitude", photo.getLatitude());
-            builder.set("Longitude", photo.getLongitude());
-
-            SimpleFeature feature = builder.buildFeature(name);
-            collection.add(feature);
         }
 
+        statistics.itemsProcessed(matched);
+        return statistics;
+    }
 
-        File outputShapeFile = new File(outputDir, shapeFile);
+    /**
+     * Writes the stage metrics to the output directory as json
+     */
+    private void writeMetrics()
+    {
+        metrics.setCount("georeferenced", georeferencedCount);
+        metrics.setCount("rejected", rejectedCount);
+        metrics.complete();
 
-        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
+        File metricsFile = new File(outputDir, ProcessingMetrics.METRICS_FILE_NAME);
 
-        Map<String, Serializable> params = new HashMap<>();
-        params.put("url", outputShapeFile.toURI().toURL());
-        params.put("create spatial index", Boolean.TRUE);
+        try
+        {
+            metrics.write(metricsFile);
+            LOGGER.info("Saved metrics to: " + metricsFile);
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to write metrics to: " + metricsFile, e);
+        }
+    }
 
-        ShapefileDataStore newDataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
-        newDataStore.createSchema(featureType);
+    /**
+     * Writes features for the matched photos to a new shape file or appends
+     * them to the existing shape file, rebuilding the spatial index
+     */
+    static void writeShapeFile(File outputShapeFile, List<GPSPhoto> shapePhotos, boolean thumbnails, boolean append)
+        throws GPSPhotoException, IOException
+    {
+        FastDateFormat fdf = FastDateFormat.getInstance("dd/MM/yyyy HH:mm:ss", GPSPhoto.WALL_CLOCK_TIME_ZONE);
 
-        Transaction transaction = new DefaultTransaction("create");
+        GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory(null);
 
-        String typeName = newDataStore.getTypeNames()[0];
-        SimpleFeatureSource featureSource = newDataStore.getFeatureSource(typeName);
+        ShapefileDataStore dataStore;
+        boolean appending = append && outputShapeFile.isFile();
 
-        if (featureSource instanceof SimpleFeatureStore)
+        if (appending)
         {
-            SimpleFeatureStore featureStore = (SimpleFeatureStore) featureSource;
+            dataStore = new ShapefileDataStore(outputShapeFile.toURI().toURL());
+            dataStore.setIndexCreationEnabled(false);
+        }
+        else
+        {
+            ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
 
-            featureStore.setTransaction(transaction);
-            try
-            {
-                featureStore.addFeatures(collection);
-                transaction.commit();
+            Map<String, Serializable> params = new HashMap<>();
+            params.put("url", outputShapeFile.toURI().toURL());
+            params.put("create spatial index", Boolean.FALSE);
 
-            } catch (Throwable t)
+            dataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
+        }
+
+        try
+        {
+            if (!appending)
             {
-                transaction.rollback();
-                throw new GPSPhotoException("Failed to write shape file", t);
+                dataStore.createSchema(createFeatureType(thumbnails));
             }
-            finally
+
+            String typeName = dataStore.getTypeNames()[0];
+
+            /**
+             * Auto commit writes each feature through to the shape file, a
+             * transaction would hold every uncommitted feature in memory
+             */
+            try (FeatureWriter<SimpleFeatureType, SimpleFeature> writer =
+                         dataStore.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT))
             {
-                transaction.close();
+                /**
+                 * A shape file appended to keeps its schema, which only has
+                 * images if it was first written with thumbnails
+                 */
+                boolean images = thumbnails && writer.getFeatureType().getDescriptor("Image") != null;
+
+                for (GPSPhoto photo: shapePhotos)
+                {
+                    if (!photo.isMatched())
+                    {
+                        continue;
+                    }
+
+                    String name = FilenameUtils.removeExtension(photo.getInputFile().getName());
+                    Point point = geometryFactory.createPoint(new Coordinate(photo.getLongitude(), photo.getLatitude()));
+
+                    SimpleFeature feature = writer.next();
+                    feature.setDefaultGeometry(point);
+                    feature.setAttribute("Name", name);
+
+                    if (images)
+                    {
+                        feature.setAttribute("Image", photo.getInputFile().getName());
+                    }
+
+                    feature.setAttribute("Date", fdf.format(photo.getOffsetTime()));
+                    feature.setAttribute("Latitude", photo.getLatitude());
+                    feature.setAttribute("Longitude", photo.getLongitude());
+
+                    writer.write();
+                }
             }
         }
+        catch (Throwable t)
+        {
+            throw new GPSPhotoException("Failed to write shape file", t);
+        }
+        finally
+        {
+            dataStore.dispose();
+        }
+
+        createSpatialIndex(outputShapeFile);
 
         LOGGER.info("Shape file written to: " + outputShapeFile);
     }
 
-    private void createKMLFile() throws IOException
+    /**
+     * Builds the quad tree spatial index for a written shape file
+     */
+    private static void createSpatialIndex(File outputShapeFile) throws GPSPhotoException
     {
-        if (StringUtils.isBlank(kmlFile))
-        {
-            return;
-        }
+        ShpFiles shpFiles = null;
 
-        StringBuilder buf = new StringBuilder();
-
-        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        buf.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\"");
-        buf.append(" xmlns:gx=\"http://www.google.com/kml/ext/2.2\"");
-        buf.append(" xmlns:kml=\"http://www.opengis.net/kml/2.2\"");
-        buf.append(" xmlns:atom=\"http://www.w3.org/2005/Atom\">\n");
-        buf.append("<Document>\\n");
-        buf.append("	<name>").append(XMLUtils.removeXMLInvalidChars(projectName)).append("</name>\n");
-        buf.append("	<Style id=\"sn_placemark_circle\">\n");
-        buf.append("		<IconStyle>\n");
-        buf.append("			<color>ff00ffff</color>\n");
-        buf.append("			<scale>0.8</scale>\n");
-        buf.append("			<Icon>\n");
-        buf.append("				<href>http://maps.google.com/mapfiles/kml/shapes/placemark_circle.png</href>\n");
-        buf.append("			</Icon>\n");
-        buf.append("		</IconStyle>\\n");
-		buf.append("		<LabelStyle>\n");
-		buf.append("            <scale>0</scale>\n");
-		buf.append("        </LabelStyle>\n");
-        buf.append("		<ListStyle>\n");
-        buf.append("		</ListStyle>\n");
-        buf.append("	</Style>\n");
-        buf.append("	<StyleMap id=\"msn_placemark_circle\">\n");
-        buf.append("		<Pair>\n");
-        buf.append("			<key>normal</key>\n");
-        buf.append("			<styleUrl>#sn_placemark_circle</styleUrl>\n");
-        buf.append("		</Pair>\n");
-        buf.append("		<Pair>\n");
-        buf.append("			<key>highlight</key>\n");
-        buf.append("			<styleUrl>#sh_placemark_circle_highlight</styleUrl>\n");
-        buf.append("		</Pair>\n");
-        buf.append("	</StyleMap>\n");
-        buf.append("	<Style id=\"sh_placemark_circle_highlight\">\n");
-        buf.append("		<IconStyle>\n");
-        buf.append("			<color>ff00ffff</color>\n");
-        buf.append("			<scale>1.0</scale>\n");
-        buf.append("			<Icon>\n");
-        buf.append("				<href>http://maps.google.com/mapfiles/kml/shapes/placemark_circle.png</href>\n");
-        buf.append("			</Icon>\n");
-        buf.append("		</IconStyle>\n");
-        buf.append("		<ListStyle>\n");
-        buf.append("		</ListStyle>\n");
-        buf.append("	</Style>\n");
+        try
+        {
+            shpFiles = new ShpFiles(outputShapeFile);
 
-        for (GPSPhoto photo: photos)
+            ShapeFileIndexer indexer = new ShapeFileIndexer();
+            indexer.setShapeFileName(shpFiles);
+            indexer.index(false, new NullProgressListener());
+        }
+        catch (Throwable t)
+        {
+            throw new GPSPhotoException("Failed to index shape file", t);
+        }
+        finally
         {
-            if (!photo.isMatched())
+            if (shpFiles != null)
             {
-                continue;
+                shpFiles.dispose();
             }
+        }
+    }
 
-            String encodedFileName = XMLUtils.removeXMLInvalidChars(
-                    FilenameUtils.removeExtension(photo.getInputFile().getName()));
-
-            buf.append("	<Placemark>\n");
-            buf.append("		<name>").append(encodedFileName).append("</name>\n");
-            buf.append("		<description><![CDATA[<img src=\"").append(photo.getInputFile().getName()).append("\"/>]]></description>\n");
-            buf.append("		<LookAt>\n");
-            buf.append("			<longitude>").append(String.format("%.16f", photo.getLongitude())).append("</longitude>\n");
-            buf.append("			<latitude>").append(String.format("%.16f", photo.getLatitude())).append("</latitude>\n");
-            buf.append("			<altitude>0</altitude>\n");
-            buf.append("			<heading>0</heading>\n");
-            buf.append("			<tilt>0</tilt>\n");
-            buf.append("			<range>300</range>\n");
-            buf.append("			<gx:altitudeMode>relativeToSeaFloor</gx:altitudeMode>\n");
-            buf.append("		</LookAt>\n");
-            buf.append("		<styleUrl>#msn_placemark_circle</styleUrl>\n");
-            buf.append("		<Point>\n");
-            buf.append("			<gx:drawOrder>1</gx:drawOrder>\n");
-            buf.append("			<coordinates>").append(String.format("%.16f,%.16f,0", photo.getLongitude(), photo.getLatitude())).append("</coordinates>\n");
-            buf.append("		</Point>\n");
-            buf.append("	</Placemark>\n");
-        }
-
-        buf.append("</Document>\n");
-        buf.append("</kml>\n");
-
+    /**
+     * Streams placemarks for matched photos to a kml or kmz file
+     */
+    private void createKMLFile() throws IOException
+    {
+        if (StringUtils.isBlank(kmlFile))
+        {
+            return;
+        }
 
+        StageStatistics kmlStatistics = createOutputStage("kml");
         File outputKMLFile = new File(outputDir, kmlFile);
-        FileUtils.write(outputKMLFile, buf.toString());
 
-        LOGGER.info("Saved kml file to: " + outputKMLFile);
-    }
-
-    private void computePositions()
-    {
-        /**
-         * Initial support for tracks
-         */
-        for (Track track: gpxData.getTracks())
+        try (KMLWriter writer = new KMLWriter(outputKMLFile, projectName))
         {
-            for (TrackSegment segment: track.getTrackSegments())
+            for (GPSPhoto photo: photos)
             {
-                for (Waypoint waypoint: segment.getWaypoints())
+                if (!photo.isMatched())
                 {
-                    GPSPosition position =
-                            new GPSPosition(
-                                    waypoint.getLatitude(),
-                                    waypoint.getLongitude(),
-                                    waypoint.getTime());
-
-                    positions.add(position);
+                    continue;
                 }
+
+                writer.writePlacemark(
+                        FilenameUtils.removeExtension(photo.getInputFile().getName()),
+                        photo.getInputFile().getName(),
+                        photo.getLatitude(),
+                        photo.getLongitude());
             }
         }
 
-        Collections.sort(positions);
+        kmlStatistics.addBytesWritten(outputKMLFile.length());
+        kmlStatistics.complete();
+
+        LOGGER.info("Saved kml file to: " + outputKMLFile);
+    }
 
+    private void computePositions()
+    {
         if (logFrame != null)
         {
-            logFrame.addLog("INFO", String.format("Loaded [%d] GPS positions", positions.size()));
-            if (!positions.isEmpty())
+            logFrame.addLog("INFO", String.format("Loaded [%d] GPS positions", track.size()));
+            if (!track.isEmpty())
             {
-                Date minDate = positions.get(0).getUTCTime();
-                Date maxDate = positions.get(positions.size() - 1).getUTCTime();
+                Date minDate = new Date(track.getTime(0));
+                Date maxDate = new Date(track.getTime(track.size() - 1));
                 logFrame.addLog("INFO",
                     String.format("Minimum GPS UTC time: [%s] Maximum GPS UTC time: [%s]",
                                   dateFormat.format(minDate), dateFormat.format(maxDate)));
@@ -574,89 +702,153 @@ public class GPSPhotoProcessor
     }
 
     /**
-     * Identifies and loads photos making thumbnails
+     * Identifies photos and processes them through the pipeline which loads
+     * meta data, matches and makes thumbnails
      */
     private void processPhotos() throws GPSPhotoException
     {
-        Collection<File> photoFiles = FileUtils.listFiles(new File(photosDir), new String[] { "jpg", "jpeg", "JPG", "JPEG" }, recursive);
-
-        LOGGER.info(String.format("Found: [%d] matching input files to process", photoFiles.size()));
+        LOGGER.info(String.format("Processing photos using: [%d] cores with tolerance: [%d] milliseconds",
+                  cores, tolerance));
 
-        if (logFrame != null)
+        if (thumbnails)
         {
-            logFrame.addLog("INFO", String.format("Found: [%d] matching input files to process", photoFiles.size()));
+            LOGGER.info(String.format("Writing thumbnails using: [%d] cores", thumbnailCores));
         }
 
-        for (File photoFile: photoFiles)
-        {
-            GPSPhoto photo = new GPSPhoto(photoFile);
+        /**
+         * Capture times of unchanged photos are reused from previous runs
+         */
+        metaDataCache = new PhotoMetaDataCache(new File(outputDir, PhotoMetaDataCache.CACHE_FILE_NAME));
+        metaDataCache.load();
 
-            if (thumbnails)
-            {
-                photo.setThumbnailFile(new File(outputDir, photoFile.getName()));
-            }
+        final StageStatistics discoveryStatistics = metrics.addStage(
+            new StageStatistics("discovery", Math.max(cores, MIN_SEARCH_THREADS), null));
 
-            photo.loadMetaData();
-            photo.applyTimeDelta(timeOffset);
-            photos.add(photo);
-        }
+        /**
+         * The total is only known once the search completes, until then the
+         * progress is shown as indeterminate
+         */
+        final AtomicBoolean searching = new AtomicBoolean(true);
 
-        Collections.sort(photos, new Comparator<GPSPhoto>()
+        final GPSPhotoPipeline.ProgressListener progressListener = new GPSPhotoPipeline.ProgressListener()
         {
+            private int lastPercent = -1;
+
             @Override
-            public int compare(GPSPhoto photo1, GPSPhoto photo2)
+            public synchronized void photoProcessed(int processedCount, int totalCount)
             {
-                return photo1.getCaptureTime().compareTo(photo2.getCaptureTime());
-            }
-        });
+                if (searching.get())
+                {
+                    return;
+                }
 
-        LinkedBlockingQueue<GPSPhoto> photosToProcess = new LinkedBlockingQueue<>(photos);
-        LinkedBlockingQueue<GPSPhoto> completePhotos = new LinkedBlockingQueue<>();
-        LinkedBlockingQueue<GPSPhoto> failedPhotos = new LinkedBlockingQueue<>();
+                /**
+                 * Only push whole percentage increases to the log frame, as
+                 * reports from the matching threads may arrive out of order
+                 */
+                int percent = totalCount == 0 ? 100 : (int) (100L * processedCount / totalCount);
 
-        LOGGER.info(String.format("Processing photos using: [%d] cores with tolerance: [%d] milliseconds",
-                  cores, tolerance));
+                if (percent > lastPercent)
+                {
+                    lastPercent = percent;
+                    updateProgress(totalCount, processedCount);
+                }
+            }
+        };
 
-        final List<Thread> threads = new ArrayList<>();
+        final GPSPhotoPipeline pipeline = createPipeline(progressListener);
 
-        for (int i = 0; i < cores; ++i)
-        {
-            GPSPhotoThread runnable = new GPSPhotoThread(positions, tolerance, photosToProcess, completePhotos, failedPhotos);
-            Thread thread = new Thread(runnable);
-            thread.setDaemon(true);
-            thread.start();
-            threads.add(thread);
-        }
+        /**
+         * Photos are loaded and matched while the rest of the folder is searched
+         */
+        pipeline.setMetrics(metrics);
+        pipeline.start();
 
-        while (!photosToProcess.isEmpty())
+        /**
+         * Always stop the pipeline as a failed search never reaches await
+         */
+        try
         {
-            double totalCount = photos.size();
-            double processedCount = completePhotos.size() + failedPhotos.size();
+            setProgressIndeterminate(true);
+            discoveryStatistics.start();
+
+            int found = createPhotoFinder().find(new PhotoFinder.PhotoListener()
+            {
+                @Override
+                public void photoFound(File photoFile)
+                {
+                    GPSPhoto photo = createPhoto(photoFile);
+                    discoveryStatistics.photoProcessed();
+
+                    synchronized (photos)
+                    {
+                        photos.add(photo);
+                    }
+
+                    pipeline.submit(photo);
+                }
+            }, Math.max(cores, MIN_SEARCH_THREADS));
 
-            double percentComplete = totalCount == 0 ? 1.0 : processedCount / totalCount;
+            discoveryStatistics.complete();
+
+            searching.set(false);
+            setProgressIndeterminate(false);
+            progressListener.photoProcessed(pipeline.getProcessed(), found);
+
+            LOGGER.info(String.format("Found: [%d] matching input files to process", found));
 
             if (logFrame != null)
             {
-                logFrame.setProcessingComplete(percentComplete);
+                logFrame.addLog("INFO", String.format("Found: [%d] matching input files to process", found));
             }
 
-            sleep(100L);
+            pipeline.await();
+        }
+        finally
+        {
+            setProgressIndeterminate(false);
+            pipeline.shutdown();
+        }
+
+        LOGGER.info(String.format("Reused cached meta data for: [%d] photos", metaDataCache.getHits()));
+
+        if (thumbnails)
+        {
+            LOGGER.info(String.format("Reused existing thumbnails for: [%d] photos", metaDataCache.getThumbnailHits()));
         }
 
-        /**
-         * Wait for all of the threads to complete
-         */
-        for (Thread thread: threads)
+        try
         {
-            try
+            metaDataCache.save();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to save photo meta data cache", e);
+        }
+
+        Collections.sort(photos, CAPTURE_TIME_ORDER);
+
+        for (StageStatistics statistics: Arrays.asList(pipeline.getMatchingStatistics(), pipeline.getThumbnailStatistics()))
+        {
+            if (statistics.getThreads() == 0)
             {
-                thread.join();
+                continue;
             }
-            catch (InterruptedException ignored)
+
+            LOGGER.info(statistics.toString());
+
+            if (logFrame != null)
             {
+                logFrame.addLog("INFO", statistics.toString());
             }
         }
 
+        List<GPSPhoto> completePhotos = pipeline.getCompletePhotos();
+        List<GPSPhoto> failedPhotos = pipeline.getFailedPhotos();
+
+        georeferencedCount = completePhotos.size();
+        rejectedCount = failedPhotos.size();
+
         this.summary = String.format("Georeferenced: [%d] photos and rejected: [%d] photos",
                                   completePhotos.size(), failedPhotos.size());
         LOGGER.info(String.format("Georeferenced: [%d] photos and rejected: [%d] photos",
@@ -664,37 +856,277 @@ public class GPSPhotoProcessor
 
         if (logFrame != null)
         {
-            while (!failedPhotos.isEmpty())
+            for (GPSPhoto photo: failedPhotos)
             {
-                GPSPhoto photo = failedPhotos.poll();
+                String message = String.format("Failed to position photo: [%s] local time: [%s] offset time: [%s]",
+                    photo.getInputFile().toString(),
+                    dateFormat.format(photo.getCaptureTime()),
+                    dateFormat.format(photo.getOffsetTime()));
+                LOGGER.warn(message);
+                logFrame.addLog("WARNING", message);
+            }
+        }
+    }
 
-                if (photo != null)
+    private GPSPhotoPipeline createPipeline(GPSPhotoPipeline.ProgressListener listener)
+    {
+        GPSPhotoPipeline pipeline = new GPSPhotoPipeline(track, tolerance, timeOffset, cores,
+            thumbnails ? thumbnailCores : 0, metaDataCache, listener);
+
+        if (matchingExecutor != null)
+        {
+            pipeline.setExecutors(matchingExecutor, thumbnailExecutor);
+        }
+
+        return pipeline;
+    }
+
+    /**
+     * Finds photos in the photos folder skipping the output folder
+     */
+    private PhotoFinder createPhotoFinder()
+    {
+        PhotoFinder finder = new PhotoFinder(new File(photosDir), recursive, photoExtensions, photoIncludes, photoExcludes);
+        finder.setExcludeDir(new File(outputDir));
+        return finder;
+    }
+
+    private GPSPhoto createPhoto(File photoFile)
+    {
+        GPSPhoto photo = new GPSPhoto(photoFile);
+
+        if (thumbnails)
+        {
+            photo.setThumbnailFile(new File(outputDir, photoFile.getName()));
+        }
+
+        return photo;
+    }
+
+    /**
+     * Keeps watching the photos folder after processing, geotagging photos
+     * against the loaded track as they arrive and updating the kml and shape
+     * files until stopWatching is called or the thread is interrupted
+     */
+    public void watch() throws GPSPhotoException, IOException
+    {
+        final Map<File, Long> processed = new HashMap<>();
+
+        for (GPSPhoto photo: photos)
+        {
+            processed.put(photo.getInputFile().getAbsoluteFile(), photo.getInputFile().lastModified());
+        }
+
+        PhotoFinder finder = createPhotoFinder();
+        watcher = new PhotoFolderWatcher(finder, WATCH_QUIET_PERIOD);
+
+        try
+        {
+            /**
+             * Photos that arrived while the folder was being processed may
+             * still be copying so they wait for the quiet period as well
+             */
+            List<File> missed = new ArrayList<>();
+
+            for (File photoFile: finder.findAll(Math.max(cores, MIN_SEARCH_THREADS)))
+            {
+                if (!processed.containsKey(photoFile.getAbsoluteFile()))
+                {
+                    missed.add(photoFile);
+                }
+            }
+
+            watcher.addPhotos(missed);
+
+            watcher.run(new PhotoFolderWatcher.PhotoListener()
+            {
+                @Override
+                public void photosReady(List<File> photoFiles) throws GPSPhotoException
                 {
-                    String message = String.format("Failed to position photo: [%s] local time: [%s] offset time: [%s]",
-                        photo.getInputFile().toString(),
-                        dateFormat.format(photo.getCaptureTime()),
-                        dateFormat.format(photo.getOffsetTime()));
-                    LOGGER.warn(message);
-                    logFrame.addLog("WARNING", message);
+                    processNewPhotos(photoFiles, processed);
                 }
+            });
+        }
+        finally
+        {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Stops watching for new photos
+     */
+    public void stopWatching() throws IOException
+    {
+        if (watcher != null)
+        {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Geotags new or changed photos, rewriting the kml file and appending to
+     * the shape file. Photos without meta data are logged and skipped until
+     * they change again.
+     */
+    private void processNewPhotos(List<File> photoFiles, Map<File, Long> processed) throws GPSPhotoException
+    {
+        long start = System.currentTimeMillis();
+        List<GPSPhoto> newPhotos = new ArrayList<>();
+        boolean replaced = false;
+
+        for (File photoFile: photoFiles)
+        {
+            File key = photoFile.getAbsoluteFile();
+            Long modified = processed.get(key);
+
+            if (modified != null && modified == photoFile.lastModified())
+            {
+                continue;
+            }
+
+            if (modified != null)
+            {
+                replaced |= removePhoto(key);
+            }
+
+            processed.put(key, photoFile.lastModified());
+            newPhotos.add(createPhoto(photoFile));
+        }
+
+        if (newPhotos.isEmpty())
+        {
+            return;
+        }
+
+        List<GPSPhoto> loadedPhotos = runPipeline(newPhotos);
+
+        if (loadedPhotos.isEmpty() && !replaced)
+        {
+            return;
+        }
+
+        try
+        {
+            metaDataCache.save();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Failed to save photo meta data cache", e);
+        }
+
+        photos.addAll(loadedPhotos);
+        Collections.sort(photos, CAPTURE_TIME_ORDER);
+
+        georeferencedCount = 0;
+
+        for (GPSPhoto photo: photos)
+        {
+            if (photo.isMatched())
+            {
+                ++georeferencedCount;
             }
         }
 
+        rejectedCount = photos.size() - georeferencedCount;
+        summary = String.format("Georeferenced: [%d] photos and rejected: [%d] photos", georeferencedCount, rejectedCount);
 
+        /**
+         * The kml file is streamed so rewriting it is cheap, the shape file
+         * is appended to unless a photo was replaced
+         */
+        try
+        {
+            createKMLFile();
+
+            if (replaced)
+            {
+                createShapeFile();
+            }
+            else if (StringUtils.isNotBlank(shapeFile))
+            {
+                writeShapeFile(new File(outputDir, shapeFile), loadedPhotos, thumbnails, true);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new GPSPhotoException("Failed to update outputs", e);
+        }
+
+        LOGGER.info(String.format("Processed: [%d] new photos in: [%d] milliseconds, %s",
+            loadedPhotos.size(), System.currentTimeMillis() - start, summary));
     }
 
-    private void sleep(long time)
+    /**
+     * Runs new photos through the pipeline returning the photos whose meta
+     * data could be loaded, retrying photos one at a time if any fail
+     */
+    private List<GPSPhoto> runPipeline(List<GPSPhoto> newPhotos)
     {
         try
         {
-            Thread.sleep(time);
+            createPipeline(null).process(newPhotos);
+            return newPhotos;
         }
-        catch (InterruptedException ignored)
+        catch (GPSPhotoException e)
         {
+            if (newPhotos.size() == 1)
+            {
+                LOGGER.error("Skipping photo without meta data: " + newPhotos.get(0).getInputFile(), e);
+                return Collections.emptyList();
+            }
         }
+
+        List<GPSPhoto> loadedPhotos = new ArrayList<>();
+
+        for (GPSPhoto photo: newPhotos)
+        {
+            GPSPhoto retry = createPhoto(photo.getInputFile());
+            loadedPhotos.addAll(runPipeline(Collections.singletonList(retry)));
+        }
+
+        return loadedPhotos;
     }
 
-    private static CommandLine parseCommandLine(String[] args)
+    private boolean removePhoto(File photoFile)
+    {
+        Iterator<GPSPhoto> iterator = photos.iterator();
+
+        while (iterator.hasNext())
+        {
+            if (iterator.next().getInputFile().getAbsoluteFile().equals(photoFile))
+            {
+                iterator.remove();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void setProgressIndeterminate(boolean indeterminate)
+    {
+        if (logFrame != null)
+        {
+            logFrame.setProcessingIndeterminate(indeterminate);
+        }
+    }
+
+    private void updateProgress(int totalCount, int processedCount)
+    {
+        double percentComplete = totalCount == 0 ? 1.0 : (double) processedCount / totalCount;
+
+        if (logFrame != null)
+        {
+            logFrame.setProcessingComplete(percentComplete);
+        }
+    }
+
+    /**
+     * The options for processing a single project, shared by the command
+     * line and batch manifests
+     */
+    static Options createOptions()
     {
         Options options = new Options();
 
@@ -703,8 +1135,8 @@ public class GPSPhotoProcessor
               .required(true).desc("Project name used to name output files").build());
 
         options.addOption(Option.builder("gpx")
-              .hasArg().argName("input GPX file")
-              .required(true).desc("Input GPX file").build());
+              .hasArg().argName("input GPX file or folder")
+              .required(true).desc("Input GPX file or folder of GPX files, may be repeated").build());
 
         options.addOption(Option.builder("photos")
               .argName("input photo folder")
@@ -715,10 +1147,26 @@ public class GPSPhotoProcessor
               .argName("recursive photo search")
               .desc("search recursively for photos").build());
 
+        options.addOption(Option.builder("extensions")
+              .argName("photo extensions").hasArg()
+              .desc("comma separated photo file extensions matched ignoring case [jpg,jpeg]").build());
+
+        options.addOption(Option.builder("include")
+              .argName("glob").hasArg()
+              .desc("only process photos whose file name or path in the photo folder matches the glob, may be repeated").build());
+
+        options.addOption(Option.builder("exclude")
+              .argName("glob").hasArg()
+              .desc("skip photos and folders whose name or path in the photo folder matches the glob, may be repeated").build());
+
         options.addOption(Option.builder("cores")
               .argName("cores to use").hasArg()
               .desc("the number of CPU cores to use for photo matching").build());
 
+        options.addOption(Option.builder("thumbnailcores")
+              .argName("cores to use for thumbnails").hasArg()
+              .desc("the number of CPU cores to use for writing thumbnails, defaults to the matching cores").build());
+
         options.addOption(Option.builder("outputdir")
               .argName("output directory").required().hasArg()
               .desc("output directory to write results to").build());
@@ -737,6 +1185,11 @@ public class GPSPhotoProcessor
               .hasArg().required(true)
               .desc("time of timestamp photo").build());
 
+        options.addOption(Option.builder("timezoneoffset")
+              .argName("time zone offset in hours")
+              .hasArg()
+              .desc("offset in hours of the photo time from UTC [0]").build());
+
         options.addOption(Option.builder("tolerance")
               .argName("time matching tolerance in milliseconds")
               .hasArg()
@@ -750,6 +1203,16 @@ public class GPSPhotoProcessor
               .argName("kml file name").hasArg().required(false)
               .desc("name of the kml file to write in the output directory").build());
 
+        return options;
+    }
+
+    private static CommandLine parseCommandLine(String[] args)
+    {
+        Options options = createOptions();
+
+        options.addOption(Option.builder("watch").required(false)
+              .desc("keep running after processing, geotagging new photos as they arrive in the photo folder").build());
+
         options.addOption(Option.builder("help").required(false)
               .desc("show help information").build());
 
@@ -788,8 +1251,57 @@ public class GPSPhotoProcessor
         this.logFrame = logFrame;
     }
 
+    /**
+     * Sets the photo file extensions, ignoring case, and the globs photos
+     * must match one of and must not match
+     */
+    public void setPhotoFilters(List<String> extensions, List<String> includes, List<String> excludes)
+    {
+        this.photoExtensions = extensions;
+        this.photoIncludes = includes;
+        this.photoExcludes = excludes;
+    }
+
+    /**
+     * Processes photos on executors shared with other processors, used when
+     * processing many projects at once
+     */
+    public void setExecutors(ThreadPoolExecutor matchingExecutor, ThreadPoolExecutor thumbnailExecutor)
+    {
+        this.matchingExecutor = matchingExecutor;
+        this.thumbnailExecutor = thumbnailExecutor;
+    }
+
     public String getSummary()
     {
         return summary;
     }
+
+    public String getProjectName()
+    {
+        return projectName;
+    }
+
+    public String getOutputDir()
+    {
+        return outputDir;
+    }
+
+    public int getGeoreferencedCount()
+    {
+        return georeferencedCount;
+    }
+
+    /**
+     * The stage metrics of the last run or null before processing
+     */
+    public ProcessingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public int getRejectedCount()
+    {
+        return rejectedCount;
+    }
 }
\ No newline at end of file
@@ -54,7 +54,7 @@ public class GPSPosition implements Comparable<GPSPosition>
 
     public String toString()
     {
-        FastDateFormat fdf = FastDateFormat.getInstance("dd/MM/yyyy HH:mm:ss");
+        FastDateFormat fdf = FastDateFormat.getInstance("dd/MM/yyyy HH:mm:ss", GPSPhoto.WALL_CLOCK_TIME_ZONE);
         return String.format("UTC time: [%s] Lat: [%.16f] Lon: [%.16f]",
 //                             fdf.format(localTime),
                              fdf.format(utcTime),
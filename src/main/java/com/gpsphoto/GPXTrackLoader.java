@@ -0,0 +1,288 @@
+package com.gpsphoto;
+
+import com.hs.gpxparser.GPXStreamParser;
+import com.hs.gpxparser.ITrackPointHandler;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a track from one or more GPX files, parsing the files in parallel
+ * and merging their time sorted tracks into a single track. Each GPX file is
+ * loaded from its track cache when it hasn't changed since it was parsed.
+ */
+public class GPXTrackLoader
+{
+    private static final Logger LOGGER = Logger.getLogger(GPXTrackLoader.class);
+
+    private final File cacheDir;
+    private final int threads;
+
+    private final AtomicInteger untimed = new AtomicInteger();
+
+    private ProcessingMetrics metrics = new ProcessingMetrics(null);
+
+    /**
+     * @param cacheDir directory for track cache files or null to disable caching
+     * @param threads the maximum number of GPX files to parse at once
+     */
+    public GPXTrackLoader(File cacheDir, int threads)
+    {
+        this.cacheDir = cacheDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Records the gpx stage timing each file and the positions stage
+     * timing the merge
+     */
+    public void setMetrics(ProcessingMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Expands the GPX paths into GPX files, replacing directories with the
+     * GPX files directly inside them in name order
+     */
+    public static List<File> findGPXFiles(List<String> gpxPaths) throws GPSPhotoException
+    {
+        List<File> gpxFiles = new ArrayList<>();
+
+        for (String gpxPath: gpxPaths)
+        {
+            File file = new File(gpxPath);
+
+            if (file.isFile())
+            {
+                gpxFiles.add(file);
+            }
+            else if (file.isDirectory())
+            {
+                File[] children = file.listFiles(new FileFilter()
+                {
+                    @Override
+                    public boolean accept(File child)
+                    {
+                        return child.isFile() && FilenameUtils.isExtension(child.getName().toLowerCase(), "gpx");
+                    }
+                });
+
+                if (children == null || children.length == 0)
+                {
+                    throw new GPSPhotoException("No GPX files found in: " + gpxPath);
+                }
+
+                Arrays.sort(children);
+                gpxFiles.addAll(Arrays.asList(children));
+            }
+            else
+            {
+                throw new GPSPhotoException("GPX file not found: " + gpxPath);
+            }
+        }
+
+        if (gpxFiles.isEmpty())
+        {
+            throw new GPSPhotoException("No GPX files specified");
+        }
+
+        return gpxFiles;
+    }
+
+    /**
+     * Loads each GPX file in parallel and merges the tracks, positions
+     * recorded at the same time in more than one file are only kept once
+     */
+    public TrackIndex load(List<File> gpxFiles) throws GPSPhotoException
+    {
+        untimed.set(0);
+
+        List<TrackIndex> tracks = new ArrayList<>(gpxFiles.size());
+        final StageStatistics gpxStatistics = metrics.addStage(
+            new StageStatistics("gpx", Math.max(1, Math.min(threads, gpxFiles.size())), null));
+
+        if (gpxFiles.size() == 1)
+        {
+            tracks.add(loadFile(gpxFiles.get(0), gpxStatistics));
+        }
+        else
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, gpxFiles.size())));
+
+            try
+            {
+                List<Future<TrackIndex>> futures = new ArrayList<>(gpxFiles.size());
+
+                for (final File gpxFile: gpxFiles)
+                {
+                    futures.add(executor.submit(new Callable<TrackIndex>()
+                    {
+                        @Override
+                        public TrackIndex call() throws GPSPhotoException
+                        {
+                            return loadFile(gpxFile, gpxStatistics);
+                        }
+                    }));
+                }
+
+                for (Future<TrackIndex> future: futures)
+                {
+                    tracks.add(future.get());
+                }
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof GPSPhotoException)
+                {
+                    throw (GPSPhotoException) e.getCause();
+                }
+
+                throw new GPSPhotoException("Failed to load GPX files", e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                throw new GPSPhotoException("Interrupted while loading GPX files", e);
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        gpxStatistics.complete();
+
+        if (untimed.get() > 0)
+        {
+            LOGGER.warn(String.format("Skipped [%d] GPS positions without a time", untimed.get()));
+        }
+
+        StageStatistics positionStatistics = metrics.createStage("positions");
+        long start = System.nanoTime();
+
+        TrackIndex track = TrackIndex.merge(tracks);
+
+        positionStatistics.itemsProcessed(track.size(), System.nanoTime() - start, 0L);
+        positionStatistics.complete();
+
+        if (tracks.size() > 1)
+        {
+            int total = 0;
+
+            for (TrackIndex fileTrack: tracks)
+            {
+                total += fileTrack.size();
+            }
+
+            LOGGER.info(String.format("Merged: [%d] track points from: [%d] GPX files dropping: [%d] duplicate track points",
+                track.size(), tracks.size(), total - track.size()));
+        }
+
+        return track;
+    }
+
+    /**
+     * Loads the track of a single GPX file recording the time taken, the
+     * track points loaded and the GPX bytes read
+     */
+    private TrackIndex loadFile(File gpxFile, StageStatistics gpxStatistics) throws GPSPhotoException
+    {
+        long start = System.nanoTime();
+        TrackIndex track = loadFile(gpxFile);
+        gpxStatistics.itemsProcessed(track.size(), System.nanoTime() - start, gpxFile.length());
+        return track;
+    }
+
+    /**
+     * Loads the track of a single GPX file from its track cache or by
+     * streaming the file, writing the track cache after parsing
+     */
+    TrackIndex loadFile(File gpxFile) throws GPSPhotoException
+    {
+        TrackCache trackCache = cacheDir == null ? null : TrackCache.forGPX(gpxFile, cacheDir);
+        long gpxSize = gpxFile.length();
+        long gpxHash = 0L;
+
+        if (trackCache != null)
+        {
+            try
+            {
+                gpxHash = TrackCache.hash(gpxFile);
+            }
+            catch (IOException e)
+            {
+                throw new GPSPhotoException(String.format("Failed to read GPX file from: [%s]", gpxFile), e);
+            }
+
+            /**
+             * Use the cached track if the GPX file hasn't changed since it was parsed
+             */
+            TrackIndex track = trackCache.read(gpxSize, gpxHash);
+
+            if (track != null)
+            {
+                LOGGER.info(String.format("Loaded: [%d] track points from track cache: [%s]", track.size(), trackCache.getCacheFile()));
+                return track;
+            }
+        }
+
+        final TrackIndex.Builder builder = new TrackIndex.Builder();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(gpxFile)))
+        {
+            GPXStreamParser parser = new GPXStreamParser();
+            int count = parser.parseTrackPoints(in, new ITrackPointHandler()
+            {
+                @Override
+                public void handleTrackPoint(double latitude, double longitude, double elevation, double hdop, long time, HashMap<String, Object> extensionData)
+                {
+                    if (time == NO_TIME)
+                    {
+                        untimed.incrementAndGet();
+                        return;
+                    }
+
+                    builder.add(latitude, longitude, elevation, hdop, time);
+                }
+            });
+
+            LOGGER.info(String.format("Successfully parsed: [%d] track points from GPX file: [%s]", count, gpxFile));
+        }
+        catch (Throwable t)
+        {
+            throw new GPSPhotoException(String.format("Failed to parse GPX file from: [%s]", gpxFile), t);
+        }
+
+        TrackIndex track = builder.build();
+
+        if (trackCache != null)
+        {
+            try
+            {
+                trackCache.write(track, gpxSize, gpxHash);
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Failed to write track cache: " + trackCache.getCacheFile(), e);
+            }
+        }
+
+        return track;
+    }
+}
@@ -0,0 +1,172 @@
+package com.gpsphoto;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.geotools.xml.XMLUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a KML document of photo placemarks to a file, writing a zipped
+ * KMZ file when the file name ends with .kmz
+ */
+public class KMLWriter implements Closeable
+{
+    /**
+     * Decimal places written for coordinates
+     */
+    private static final int COORDINATE_DECIMALS = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Name of the KML document inside a KMZ file
+     */
+    private static final String KMZ_ENTRY_NAME = "doc.kml";
+
+    private final Writer writer;
+    private final StringBuilder buf = new StringBuilder(1024);
+    private final FixedDecimalFormatter formatter = new FixedDecimalFormatter(COORDINATE_DECIMALS);
+
+    public KMLWriter(File file, String documentName) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+
+        try
+        {
+            if (isKMZ(file))
+            {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                zip.putNextEntry(new ZipEntry(KMZ_ENTRY_NAME));
+                out = zip;
+            }
+
+            writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writeHeader(documentName);
+        }
+        catch (IOException e)
+        {
+            out.close();
+            throw e;
+        }
+    }
+
+    public static boolean isKMZ(File file)
+    {
+        return file.getName().toLowerCase().endsWith(".kmz");
+    }
+
+    private void writeHeader(String documentName) throws IOException
+    {
+        buf.setLength(0);
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buf.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\"");
+        buf.append(" xmlns:gx=\"http://www.google.com/kml/ext/2.2\"");
+        buf.append(" xmlns:kml=\"http://www.opengis.net/kml/2.2\"");
+        buf.append(" xmlns:atom=\"http://www.w3.org/2005/Atom\">\n");
+        buf.append("<Document>\n");
+        buf.append("	<name>").append(escape(documentName)).append("</name>\n");
+        buf.append("	<Style id=\"sn_placemark_circle\">\n");
+        buf.append("		<IconStyle>\n");
+        buf.append("			<color>ff00ffff</color>\n");
+        buf.append("			<scale>0.8</scale>\n");
+        buf.append("			<Icon>\n");
+        buf.append("				<href>http://maps.google.com/mapfiles/kml/shapes/placemark_circle.png</href>\n");
+        buf.append("			</Icon>\n");
+        buf.append("		</IconStyle>\n");
+        buf.append("		<LabelStyle>\n");
+        buf.append("            <scale>0</scale>\n");
+        buf.append("        </LabelStyle>\n");
+        buf.append("		<ListStyle>\n");
+        buf.append("		</ListStyle>\n");
+        buf.append("	</Style>\n");
+        buf.append("	<StyleMap id=\"msn_placemark_circle\">\n");
+        buf.append("		<Pair>\n");
+        buf.append("			<key>normal</key>\n");
+        buf.append("			<styleUrl>#sn_placemark_circle</styleUrl>\n");
+        buf.append("		</Pair>\n");
+        buf.append("		<Pair>\n");
+        buf.append("			<key>highlight</key>\n");
+        buf.append("			<styleUrl>#sh_placemark_circle_highlight</styleUrl>\n");
+        buf.append("		</Pair>\n");
+        buf.append("	</StyleMap>\n");
+        buf.append("	<Style id=\"sh_placemark_circle_highlight\">\n");
+        buf.append("		<IconStyle>\n");
+        buf.append("			<color>ff00ffff</color>\n");
+        buf.append("			<scale>1.0</scale>\n");
+        buf.append("			<Icon>\n");
+        buf.append("				<href>http://maps.google.com/mapfiles/kml/shapes/placemark_circle.png</href>\n");
+        buf.append("			</Icon>\n");
+        buf.append("		</IconStyle>\n");
+        buf.append("		<ListStyle>\n");
+        buf.append("		</ListStyle>\n");
+        buf.append("	</Style>\n");
+        writer.append(buf);
+    }
+
+    /**
+     * Writes a placemark for a photo linking to its image
+     */
+    public void writePlacemark(String name, String imageName, double latitude, double longitude) throws IOException
+    {
+        buf.setLength(0);
+        buf.append("	<Placemark>\n");
+        buf.append("		<name>").append(escape(name)).append("</name>\n");
+        buf.append("		<description><![CDATA[<img src=\"").append(imageName).append("\"/>]]></description>\n");
+        buf.append("		<LookAt>\n");
+        buf.append("			<longitude>");
+        formatter.append(buf, longitude);
+        buf.append("</longitude>\n");
+        buf.append("			<latitude>");
+        formatter.append(buf, latitude);
+        buf.append("</latitude>\n");
+        buf.append("			<altitude>0</altitude>\n");
+        buf.append("			<heading>0</heading>\n");
+        buf.append("			<tilt>0</tilt>\n");
+        buf.append("			<range>300</range>\n");
+        buf.append("			<gx:altitudeMode>relativeToSeaFloor</gx:altitudeMode>\n");
+        buf.append("		</LookAt>\n");
+        buf.append("		<styleUrl>#msn_placemark_circle</styleUrl>\n");
+        buf.append("		<Point>\n");
+        buf.append("			<gx:drawOrder>1</gx:drawOrder>\n");
+        buf.append("			<coordinates>");
+        formatter.append(buf, longitude);
+        buf.append(',');
+        formatter.append(buf, latitude);
+        buf.append(",0</coordinates>\n");
+        buf.append("		</Point>\n");
+        buf.append("	</Placemark>\n");
+        writer.append(buf);
+    }
+
+    private static String escape(String text)
+    {
+        return StringEscapeUtils.escapeXml10(XMLUtils.removeXMLInvalidChars(text));
+    }
+
+    /**
+     * Closes the document and the file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            writer.append("</Document>\n");
+            writer.append("</kml>\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
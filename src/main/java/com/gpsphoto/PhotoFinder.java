@@ -0,0 +1,281 @@
+package com.gpsphoto;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds photos in a folder, listing sub folders in parallel on a fork join
+ * pool and passing each photo to a listener as soon as it is found.
+ *
+ * Photos are matched by extension ignoring case and then by optional
+ * include and exclude globs, which are matched against both the path
+ * relative to the photo folder and the file name. Folders matching an
+ * exclude glob are not searched.
+ */
+public class PhotoFinder
+{
+    private static final Logger LOGGER = Logger.getLogger(PhotoFinder.class);
+
+    public static final List<String> DEFAULT_EXTENSIONS = Collections.unmodifiableList(Arrays.asList("jpg", "jpeg"));
+
+    /**
+     * Receives photos as they are found, called from several threads at once
+     */
+    public interface PhotoListener
+    {
+        void photoFound(File photoFile);
+    }
+
+    private final Path photosDir;
+    private final boolean recursive;
+    private final Set<String> extensions = new HashSet<>();
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+    private Path excludeDir = null;
+
+    /**
+     * @param extensions photo file extensions without the dot
+     * @param includes globs photos must match one of or empty to include every photo
+     * @param excludes globs of photos and folders to skip
+     */
+    public PhotoFinder(File photosDir, boolean recursive, List<String> extensions, List<String> includes, List<String> excludes)
+    {
+        this.photosDir = photosDir.toPath().toAbsolutePath().normalize();
+        this.recursive = recursive;
+
+        for (String extension: extensions)
+        {
+            this.extensions.add(extension.toLowerCase().replaceFirst("^\\.", ""));
+        }
+
+        FileSystem fileSystem = this.photosDir.getFileSystem();
+
+        for (String include: includes)
+        {
+            this.includes.add(fileSystem.getPathMatcher("glob:" + include));
+        }
+
+        for (String exclude: excludes)
+        {
+            this.excludes.add(fileSystem.getPathMatcher("glob:" + exclude));
+        }
+    }
+
+    /**
+     * Finds every photo in the folder using the default extensions
+     */
+    public PhotoFinder(File photosDir, boolean recursive)
+    {
+        this(photosDir, recursive, DEFAULT_EXTENSIONS, Collections.<String>emptyList(), Collections.<String>emptyList());
+    }
+
+    /**
+     * Skips a folder and everything in it, usually the output folder
+     */
+    public void setExcludeDir(File excludeDir)
+    {
+        this.excludeDir = excludeDir == null ? null : excludeDir.toPath().toAbsolutePath().normalize();
+    }
+
+    public Path getPhotosDir()
+    {
+        return photosDir;
+    }
+
+    public boolean isRecursive()
+    {
+        return recursive;
+    }
+
+    /**
+     * Checks if a file in the photo folder is a photo by extension and globs
+     */
+    public boolean isPhoto(Path file)
+    {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+
+        if (dot < 0 || !extensions.contains(name.substring(dot + 1).toLowerCase()))
+        {
+            return false;
+        }
+
+        if (isExcluded(file))
+        {
+            return false;
+        }
+
+        if (includes.isEmpty())
+        {
+            return true;
+        }
+
+        Path relative = relativize(file);
+
+        for (PathMatcher include: includes)
+        {
+            if (include.matches(relative) || include.matches(file.getFileName()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if a file or folder is excluded by the exclude folder or an exclude glob
+     */
+    public boolean isExcluded(Path path)
+    {
+        Path absolute = path.toAbsolutePath().normalize();
+
+        if (excludeDir != null && absolute.startsWith(excludeDir))
+        {
+            return true;
+        }
+
+        Path relative = relativize(absolute);
+
+        for (PathMatcher exclude: excludes)
+        {
+            if (exclude.matches(relative) || exclude.matches(absolute.getFileName()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Path relativize(Path path)
+    {
+        Path absolute = path.toAbsolutePath().normalize();
+        return absolute.startsWith(photosDir) ? photosDir.relativize(absolute) : absolute;
+    }
+
+    /**
+     * Searches the photo folder passing photos to the listener as they are
+     * found, returning once every folder has been searched
+     *
+     * @param threads the number of folders to list at once
+     * @return the number of photos found
+     */
+    public int find(PhotoListener listener, int threads) throws GPSPhotoException
+    {
+        if (!Files.isDirectory(photosDir))
+        {
+            throw new GPSPhotoException("Photo folder not found: " + photosDir);
+        }
+
+        AtomicInteger found = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+
+        try
+        {
+            pool.invoke(new FolderTask(photosDir, listener, found));
+        }
+        catch (RuntimeException e)
+        {
+            throw new GPSPhotoException("Failed to search for photos in: " + photosDir, e);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+
+        return found.get();
+    }
+
+    /**
+     * Searches the photo folder returning every photo found
+     */
+    public List<File> findAll(int threads) throws GPSPhotoException
+    {
+        final List<File> photoFiles = Collections.synchronizedList(new ArrayList<File>());
+
+        find(new PhotoListener()
+        {
+            @Override
+            public void photoFound(File photoFile)
+            {
+                photoFiles.add(photoFile);
+            }
+        }, threads);
+
+        return photoFiles;
+    }
+
+    /**
+     * Lists one folder, forking a task for each sub folder
+     */
+    private class FolderTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final PhotoListener listener;
+        private final AtomicInteger found;
+
+        private FolderTask(Path dir, PhotoListener listener, AtomicInteger found)
+        {
+            this.dir = dir;
+            this.listener = listener;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute()
+        {
+            List<FolderTask> subFolders = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir))
+            {
+                for (Path entry: entries)
+                {
+                    /**
+                     * Linked folders are not followed so links can't form loops
+                     */
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                    if (attributes.isDirectory())
+                    {
+                        if (recursive && !isExcluded(entry))
+                        {
+                            subFolders.add(new FolderTask(entry, listener, found));
+                        }
+                    }
+                    else if (isPhoto(entry) && Files.isRegularFile(entry))
+                    {
+                        found.incrementAndGet();
+                        listener.photoFound(entry.toFile());
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Failed to search folder for photos: " + dir, e);
+            }
+
+            invokeAll(subFolders);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.gpsphoto;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a photo folder reporting photos once they have been created or
+ * changed and then left alone for a quiet period, so photos that are still
+ * being copied into the folder are not read half written
+ */
+public class PhotoFolderWatcher implements Closeable
+{
+    private static final Logger LOGGER = Logger.getLogger(PhotoFolderWatcher.class);
+
+    /**
+     * Milliseconds to wait for events before checking for settled photos
+     */
+    private static final long POLL_INTERVAL = 500L;
+
+    /**
+     * Receives photos that have settled
+     */
+    public interface PhotoListener
+    {
+        void photosReady(List<File> photoFiles) throws GPSPhotoException;
+    }
+
+    private final PhotoFinder finder;
+    private final Path photosDir;
+    private final boolean recursive;
+    private final long quietPeriod;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    /**
+     * Photos waiting to settle with the time and size when they last changed
+     */
+    private final Map<Path, long[]> pending = new LinkedHashMap<>();
+
+    /**
+     * Starts watching the folder straight away so photos arriving before
+     * run is called are not missed
+     *
+     * @param finder matches the photos and folders to watch
+     * @param quietPeriod milliseconds a photo must be unchanged before it is reported
+     */
+    public PhotoFolderWatcher(PhotoFinder finder, long quietPeriod) throws IOException
+    {
+        this.finder = finder;
+        this.photosDir = finder.getPhotosDir();
+        this.recursive = finder.isRecursive();
+        this.quietPeriod = quietPeriod;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        register(this.photosDir);
+    }
+
+    /**
+     * Registers a folder and, when watching recursively, the folders below it
+     */
+    private void register(Path dir) throws IOException
+    {
+        if (!recursive)
+        {
+            keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+            return;
+        }
+
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path child, BasicFileAttributes attributes) throws IOException
+            {
+                if (finder.isExcluded(child))
+                {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                keys.put(child.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), child);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e)
+            {
+                LOGGER.warn("Failed to watch photo folder: " + file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Reports settled photos to the listener until the watcher is closed
+     * or the thread is interrupted
+     */
+    public void run(PhotoListener listener) throws GPSPhotoException, IOException
+    {
+        LOGGER.info("Watching for new photos in: " + photosDir);
+
+        while (true)
+        {
+            /**
+             * The watcher may be closed while events are being drained
+             */
+            try
+            {
+                WatchKey key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+                while (key != null)
+                {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+            }
+            catch (ClosedWatchServiceException e)
+            {
+                return;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            List<File> ready = getSettledPhotos(System.currentTimeMillis());
+
+            if (!ready.isEmpty())
+            {
+                listener.photosReady(ready);
+            }
+        }
+    }
+
+    /**
+     * Adds photos found outside the watcher as pending, so they are only
+     * reported once they have settled, called before run
+     */
+    public void addPhotos(List<File> photoFiles)
+    {
+        for (File photoFile: photoFiles)
+        {
+            touch(photoFile.toPath());
+        }
+    }
+
+    private void handleEvents(WatchKey key)
+    {
+        Path dir = keys.get(key);
+
+        for (WatchEvent<?> event: key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                /**
+                 * Events were lost so check every photo in the folder
+                 */
+                LOGGER.warn("Missed photo folder events, rescanning: " + photosDir);
+
+                try
+                {
+                    addExisting(photosDir);
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Failed to rescan photo folder: " + photosDir, e);
+                }
+
+                continue;
+            }
+
+            if (dir == null)
+            {
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+
+            if (Files.isDirectory(path))
+            {
+                /**
+                 * Photos may be copied into a new folder before it is registered
+                 */
+                if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !finder.isExcluded(path))
+                {
+                    /**
+                     * The folder may be moved or deleted before it is walked
+                     */
+                    try
+                    {
+                        register(path);
+                        addExisting(path);
+                    }
+                    catch (IOException e)
+                    {
+                        LOGGER.warn("Failed to watch new photo folder: " + path, e);
+                    }
+                }
+            }
+            else if (finder.isPhoto(path))
+            {
+                touch(path);
+            }
+        }
+
+        if (!key.reset())
+        {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Adds the photos already in a folder as pending
+     */
+    private void addExisting(final Path dir) throws IOException
+    {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path child, BasicFileAttributes attributes)
+            {
+                return finder.isExcluded(child) || (!recursive && !child.equals(dir)) ?
+                    FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+            {
+                if (attributes.isRegularFile() && finder.isPhoto(file))
+                {
+                    touch(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e)
+            {
+                LOGGER.warn("Failed to check for photos: " + file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void touch(Path path)
+    {
+        pending.put(path, new long[] { System.currentTimeMillis(), path.toFile().length() });
+    }
+
+    /**
+     * Removes and returns pending photos unchanged for the quiet period,
+     * photos whose size changed since the last event wait again
+     */
+    List<File> getSettledPhotos(long now)
+    {
+        List<File> settled = new ArrayList<>();
+        Iterator<Map.Entry<Path, long[]>> iterator = pending.entrySet().iterator();
+
+        while (iterator.hasNext())
+        {
+            Map.Entry<Path, long[]> entry = iterator.next();
+            long[] state = entry.getValue();
+
+            if (now - state[0] < quietPeriod)
+            {
+                continue;
+            }
+
+            File file = entry.getKey().toFile();
+
+            if (!file.isFile())
+            {
+                iterator.remove();
+            }
+            else if (file.length() != state[1] || file.length() == 0L)
+            {
+                state[0] = now;
+                state[1] = file.length();
+            }
+            else
+            {
+                iterator.remove();
+                settled.add(file);
+            }
+        }
+
+        return settled;
+    }
+
+    /**
+     * Stops watching, causing run to return
+     */
+    @Override
+    public void close() throws IOException
+    {
+        watchService.close();
+    }
+}
@@ -0,0 +1,215 @@
+package com.gpsphoto;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches meta data extracted from photos and the state of their thumbnails
+ * in a CSV file keyed by photo path, size and modification time so re-runs
+ * can skip reading unchanged photos and rewriting their thumbnails
+ */
+public class PhotoMetaDataCache
+{
+    private static final Logger LOGGER = Logger.getLogger(PhotoMetaDataCache.class);
+
+    public static final String CACHE_FILE_NAME = "photo_metadata_cache.csv";
+
+    private static final String[] HEADER = { "Path", "Size", "Modified", "CaptureTime", "Thumbnail" };
+
+    private final File cacheFile;
+
+    /**
+     * Entries loaded from the cache file
+     */
+    private final Map<String, Entry> loaded = new ConcurrentHashMap<>();
+
+    /**
+     * Entries for photos seen in this run which are the ones saved
+     */
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger thumbnailHits = new AtomicInteger();
+
+    private static class Entry
+    {
+        private final long size;
+        private final long modified;
+        private final long captureTime;
+
+        /**
+         * Fingerprint of the thumbnail written for the photo or null
+         */
+        private volatile String thumbnail;
+
+        private Entry(long size, long modified, long captureTime, String thumbnail)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.captureTime = captureTime;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    public PhotoMetaDataCache(File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Loads the cache file if it exists, discarding the cache if it can't be read
+     */
+    public void load()
+    {
+        loaded.clear();
+
+        if (!cacheFile.isFile())
+        {
+            return;
+        }
+
+        try (BufferedReader in = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8);
+             CSVParser parser = CSVFormat.DEFAULT.withHeader(HEADER).withSkipHeaderRecord().parse(in))
+        {
+            for (CSVRecord record: parser)
+            {
+                loaded.put(record.get("Path"), new Entry(
+                    Long.parseLong(record.get("Size")),
+                    Long.parseLong(record.get("Modified")),
+                    Long.parseLong(record.get("CaptureTime")),
+                    record.isSet("Thumbnail") ? StringUtils.trimToNull(record.get("Thumbnail")) : null));
+            }
+
+            LOGGER.info(String.format("Loaded: [%d] cached photo meta data entries from: [%s]", loaded.size(), cacheFile));
+        }
+        catch (Throwable t)
+        {
+            LOGGER.warn("Ignoring unreadable photo meta data cache: " + cacheFile, t);
+            loaded.clear();
+        }
+    }
+
+    /**
+     * Returns the cached capture time of a photo or null if the photo is not
+     * cached or has changed since it was cached
+     */
+    public Date getCaptureTime(File photoFile)
+    {
+        String path = getKey(photoFile);
+        Entry entry = loaded.get(path);
+
+        if (entry == null || entry.size != photoFile.length() || entry.modified != photoFile.lastModified())
+        {
+            return null;
+        }
+
+        current.put(path, entry);
+        hits.incrementAndGet();
+        return new Date(entry.captureTime);
+    }
+
+    public void putCaptureTime(File photoFile, Date captureTime)
+    {
+        current.put(getKey(photoFile),
+            new Entry(photoFile.length(), photoFile.lastModified(), captureTime.getTime(), null));
+    }
+
+    /**
+     * Checks if the thumbnail of an unchanged photo was written with the
+     * same settings and hasn't changed since
+     */
+    public boolean isThumbnailCurrent(File photoFile, File thumbnailFile, String settings)
+    {
+        Entry entry = current.get(getKey(photoFile));
+
+        if (entry == null || entry.thumbnail == null || !thumbnailFile.isFile() ||
+            !entry.thumbnail.equals(getThumbnailFingerprint(thumbnailFile, settings)))
+        {
+            return false;
+        }
+
+        thumbnailHits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records the thumbnail written for a photo whose meta data is in the cache
+     */
+    public void putThumbnail(File photoFile, File thumbnailFile, String settings)
+    {
+        Entry entry = current.get(getKey(photoFile));
+
+        if (entry != null)
+        {
+            entry.thumbnail = getThumbnailFingerprint(thumbnailFile, settings);
+        }
+    }
+
+    /**
+     * Thumbnails are identified by their settings, path, size and modification time
+     */
+    private static String getThumbnailFingerprint(File thumbnailFile, String settings)
+    {
+        return settings + "|" + thumbnailFile.getAbsolutePath() + "|" + thumbnailFile.length() + "|" + thumbnailFile.lastModified();
+    }
+
+    /**
+     * The number of photos whose meta data was found in the cache
+     */
+    public int getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * The number of thumbnails found to be current
+     */
+    public int getThumbnailHits()
+    {
+        return thumbnailHits.get();
+    }
+
+    /**
+     * Writes the entries for the photos seen in this run replacing the cache file
+     */
+    public void save() throws IOException
+    {
+        File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+
+        try (BufferedWriter out = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(HEADER)))
+        {
+            for (Map.Entry<String, Entry> entry: current.entrySet())
+            {
+                printer.printRecord(entry.getKey(), entry.getValue().size,
+                    entry.getValue().modified, entry.getValue().captureTime,
+                    StringUtils.defaultString(entry.getValue().thumbnail));
+            }
+        }
+
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        LOGGER.info(String.format("Saved: [%d] photo meta data entries to: [%s]", current.size(), cacheFile));
+    }
+
+    private static String getKey(File photoFile)
+    {
+        return photoFile.getAbsolutePath();
+    }
+}
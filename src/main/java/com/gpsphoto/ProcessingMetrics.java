@@ -0,0 +1,252 @@
+package com.gpsphoto;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the statistics of each processing stage of a project in the
+ * order the stages ran, publishing them as MXBeans while the project runs
+ * and writing them to a metrics file once it completes.
+ *
+ * Stage MXBeans are named com.gpsphoto:type=Stage,project=[name],stage=[stage]
+ */
+public class ProcessingMetrics
+{
+    private static final Logger LOGGER = Logger.getLogger(ProcessingMetrics.class);
+
+    public static final String METRICS_FILE_NAME = "metrics.json";
+
+    private static final String JMX_DOMAIN = "com.gpsphoto";
+
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0 };
+
+    private final String projectName;
+    private final Map<String, StageStatistics> stages = new LinkedHashMap<>();
+    private final Map<String, Number> counts = new LinkedHashMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private boolean registerMBeans = false;
+
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos = 0L;
+
+    public ProcessingMetrics(String projectName)
+    {
+        this.projectName = projectName;
+    }
+
+    public String getProjectName()
+    {
+        return projectName;
+    }
+
+    /**
+     * Publishes the stages added so far and every stage added later as MXBeans
+     * on the platform MBean server
+     */
+    public synchronized void registerMBeans()
+    {
+        registerMBeans = true;
+
+        for (StageStatistics stage: stages.values())
+        {
+            registerMBean(stage);
+        }
+    }
+
+    /**
+     * Removes every stage MXBean this project published
+     */
+    public synchronized void unregisterMBeans()
+    {
+        registerMBeans = false;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for (ObjectName name: registeredNames)
+        {
+            try
+            {
+                if (server.isRegistered(name))
+                {
+                    server.unregisterMBean(name);
+                }
+            }
+            catch (JMException e)
+            {
+                LOGGER.warn("Failed to unregister metrics MXBean: " + name, e);
+            }
+        }
+
+        registeredNames.clear();
+    }
+
+    private void registerMBean(StageStatistics stage)
+    {
+        try
+        {
+            ObjectName name = new ObjectName(String.format("%s:type=Stage,project=%s,stage=%s",
+                JMX_DOMAIN, ObjectName.quote(String.valueOf(projectName)), ObjectName.quote(stage.getName())));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            /**
+             * A stage run again replaces the previous run
+             */
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+
+            server.registerMBean(stage, name);
+
+            if (!registeredNames.contains(name))
+            {
+                registeredNames.add(name);
+            }
+        }
+        catch (JMException e)
+        {
+            LOGGER.warn("Failed to register metrics MXBean for stage: " + stage.getName(), e);
+        }
+    }
+
+    /**
+     * Adds a stage replacing any earlier stage with the same name, starting
+     * its clock once it has been published
+     */
+    public synchronized StageStatistics addStage(StageStatistics stage)
+    {
+        stages.remove(stage.getName());
+        stages.put(stage.getName(), stage);
+
+        if (registerMBeans)
+        {
+            registerMBean(stage);
+        }
+
+        stage.start();
+        return stage;
+    }
+
+    /**
+     * Adds and returns a new single threaded stage
+     */
+    public StageStatistics createStage(String name)
+    {
+        return addStage(new StageStatistics(name));
+    }
+
+    public synchronized StageStatistics getStage(String name)
+    {
+        return stages.get(name);
+    }
+
+    public synchronized List<StageStatistics> getStages()
+    {
+        return new ArrayList<>(stages.values());
+    }
+
+    /**
+     * Records a project level count such as the number of photos georeferenced
+     */
+    public synchronized void setCount(String name, Number value)
+    {
+        counts.put(name, value);
+    }
+
+    /**
+     * Stops the project clock, only the first call counts
+     */
+    public synchronized void complete()
+    {
+        if (endNanos == 0L)
+        {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public long getWallTimeMillis()
+    {
+        long end = endNanos == 0L ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public synchronized JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("project", projectName);
+        json.addProperty("started", FastDateFormat.getInstance("yyyy-MM-dd'T'HH:mm:ss.SSSZZ").format(new Date(startTime)));
+        json.addProperty("wallTimeMillis", getWallTimeMillis());
+
+        for (Map.Entry<String, Number> count: counts.entrySet())
+        {
+            json.addProperty(count.getKey(), count.getValue());
+        }
+
+        JsonArray stagesJson = new JsonArray();
+
+        for (StageStatistics stage: stages.values())
+        {
+            JsonObject stageJson = new JsonObject();
+            stageJson.addProperty("name", stage.getName());
+            stageJson.addProperty("threads", stage.getThreads());
+            stageJson.addProperty("wallTimeMillis", stage.getWallTimeMillis());
+            stageJson.addProperty("items", stage.getProcessed());
+            stageJson.addProperty("itemsPerSecond", round(stage.getThroughput()));
+            stageJson.addProperty("bytesRead", stage.getBytesRead());
+            stageJson.addProperty("bytesWritten", stage.getBytesWritten());
+
+            if (stage.getLatencyCount() > 0)
+            {
+                JsonObject latencyJson = new JsonObject();
+
+                for (double percentile: PERCENTILES)
+                {
+                    latencyJson.addProperty(String.format("p%d", (int) percentile), round(stage.getLatencyPercentileMillis(percentile)));
+                }
+
+                latencyJson.addProperty("max", round(stage.getLatencyMaxMillis()));
+                stageJson.add("latencyMillis", latencyJson);
+            }
+
+            stagesJson.add(stageJson);
+        }
+
+        json.add("stages", stagesJson);
+
+        return json;
+    }
+
+    private static double round(double value)
+    {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    /**
+     * Writes the metrics as pretty printed json
+     */
+    public void write(File file) throws IOException
+    {
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(toJson());
+        FileUtils.write(file, json + "\n", StandardCharsets.UTF_8);
+    }
+}
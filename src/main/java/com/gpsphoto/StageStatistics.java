@@ -0,0 +1,311 @@
+package com.gpsphoto;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the queue depth, throughput, bytes read and written and latencies
+ * of a processing stage
+ *
+ * Latencies are counted in a fixed size log linear histogram, so recording
+ * doesn't lock and memory and percentile reads don't grow with the number
+ * of photos. Each power of two is split into 64 buckets and percentiles
+ * report the middle of their bucket, within 1% of the recorded latency.
+ */
+public class StageStatistics implements StageStatisticsMXBean
+{
+    /**
+     * Latencies below 128 nanoseconds get a bucket each, above that each
+     * power of two gets 64 buckets
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+
+    /**
+     * Latencies above 2^47 nanoseconds, about 39 hours, share the last bucket
+     */
+    private static final int MAX_MAGNITUDE = 47;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final int threads;
+    private final Queue<?> queue;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * Counts of recorded photo or file latencies in nanoseconds by bucket
+     */
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+    private final AtomicInteger latencyCount = new AtomicInteger();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private volatile long startTime = System.nanoTime();
+    private volatile long endTime = 0L;
+
+    public StageStatistics(String name, int threads, Queue<?> queue)
+    {
+        this.name = name;
+        this.threads = threads;
+        this.queue = queue;
+    }
+
+    /**
+     * Statistics for a stage run on a single thread without a queue
+     */
+    public StageStatistics(String name)
+    {
+        this(name, 1, null);
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Restarts the clock used to compute throughput
+     */
+    public synchronized void start()
+    {
+        startTime = System.nanoTime();
+        endTime = 0L;
+    }
+
+    /**
+     * Counts a processed photo returning the number processed so far
+     */
+    public int photoProcessed()
+    {
+        return processed.incrementAndGet();
+    }
+
+    /**
+     * Counts a processed photo recording how long it took and the bytes read
+     * for it, returning the number processed so far
+     */
+    public int photoProcessed(long latencyNanos, long bytes)
+    {
+        recordLatency(latencyNanos);
+        bytesRead.addAndGet(bytes);
+        return processed.incrementAndGet();
+    }
+
+    /**
+     * Counts several items processed without recording their latency
+     */
+    public void itemsProcessed(int count)
+    {
+        processed.addAndGet(count);
+    }
+
+    /**
+     * Counts several items processed together, such as the track points of
+     * a GPX file, recording how long they took and the bytes read for them
+     */
+    public void itemsProcessed(int count, long latencyNanos, long bytes)
+    {
+        recordLatency(latencyNanos);
+        bytesRead.addAndGet(bytes);
+        processed.addAndGet(count);
+    }
+
+    public void addBytesWritten(long bytes)
+    {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    private void recordLatency(long latencyNanos)
+    {
+        long latency = Math.max(0L, latencyNanos);
+        latencies.incrementAndGet(getBucket(latency));
+        latencyCount.incrementAndGet();
+
+        long max = maxLatency.get();
+
+        while (latency > max && !maxLatency.compareAndSet(max, latency))
+        {
+            max = maxLatency.get();
+        }
+    }
+
+    /**
+     * The bucket of a latency, exact below LINEAR_BUCKETS and otherwise
+     * indexed by the highest set bit and the SUB_BUCKET_BITS below it
+     */
+    static int getBucket(long latency)
+    {
+        if (latency < LINEAR_BUCKETS)
+        {
+            return (int) latency;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(latency);
+
+        if (magnitude > MAX_MAGNITUDE)
+        {
+            return BUCKETS - 1;
+        }
+
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (latency >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The middle of the range of latencies counted in a bucket
+     */
+    static double getBucketMiddle(int bucket)
+    {
+        if (bucket < LINEAR_BUCKETS)
+        {
+            return bucket;
+        }
+
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long low = (long) (SUB_BUCKETS + (bucket - LINEAR_BUCKETS) % SUB_BUCKETS) << shift;
+        return low + ((1L << shift) - 1) / 2.0;
+    }
+
+    /**
+     * Stops the clock used to compute throughput, only the first call counts
+     */
+    public synchronized void complete()
+    {
+        if (endTime == 0L)
+        {
+            endTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    public int getProcessed()
+    {
+        return processed.get();
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Photos or items processed per second since the stage was started
+     */
+    @Override
+    public double getThroughput()
+    {
+        long end = endTime == 0L ? System.nanoTime() : endTime;
+        double seconds = (end - startTime) / 1.0E9;
+        return seconds <= 0.0 ? 0.0 : processed.get() / seconds;
+    }
+
+    /**
+     * Milliseconds since the stage was started until it completed
+     */
+    @Override
+    public long getWallTimeMillis()
+    {
+        long end = endTime == 0L ? System.nanoTime() : endTime;
+        return TimeUnit.NANOSECONDS.toMillis(end - startTime);
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    public int getLatencyCount()
+    {
+        return latencyCount.get();
+    }
+
+    /**
+     * The latency in milliseconds that the given percentage of recorded
+     * latencies are at or below, using the nearest rank and reporting the
+     * middle of its bucket capped at the largest recorded latency
+     */
+    public double getLatencyPercentileMillis(double percentile)
+    {
+        long count = 0L;
+        long[] counts = new long[BUCKETS];
+
+        for (int bucket = 0; bucket < BUCKETS; ++bucket)
+        {
+            counts[bucket] = latencies.get(bucket);
+            count += counts[bucket];
+        }
+
+        if (count == 0L)
+        {
+            return 0.0;
+        }
+
+        long rank = Math.min(count, Math.max(1L, (long) Math.ceil(percentile / 100.0 * count)));
+        long seen = 0L;
+
+        for (int bucket = 0; bucket < BUCKETS; ++bucket)
+        {
+            seen += counts[bucket];
+
+            if (seen >= rank)
+            {
+                return Math.min(getBucketMiddle(bucket), maxLatency.get()) / 1.0E6;
+            }
+        }
+
+        return maxLatency.get() / 1.0E6;
+    }
+
+    @Override
+    public double getLatencyP50Millis()
+    {
+        return getLatencyPercentileMillis(50.0);
+    }
+
+    @Override
+    public double getLatencyP90Millis()
+    {
+        return getLatencyPercentileMillis(90.0);
+    }
+
+    @Override
+    public double getLatencyP99Millis()
+    {
+        return getLatencyPercentileMillis(99.0);
+    }
+
+    @Override
+    public double getLatencyMaxMillis()
+    {
+        return maxLatency.get() / 1.0E6;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Stage: [%s] threads: [%d] processed: [%d] queue depth: [%d] throughput: [%.1f] items/second",
+                name, threads, getProcessed(), getQueueDepth(), getThroughput());
+    }
+}
@@ -0,0 +1,31 @@
+package com.gpsphoto;
+
+/**
+ * The statistics of a processing stage as seen through JMX
+ */
+public interface StageStatisticsMXBean
+{
+    String getName();
+
+    int getThreads();
+
+    int getProcessed();
+
+    int getQueueDepth();
+
+    double getThroughput();
+
+    long getWallTimeMillis();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+}
@@ -0,0 +1,203 @@
+package com.gpsphoto;
+
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Writes thumbnails of photos avoiding decoding the full resolution image,
+ * first trying the EXIF embedded thumbnail if it is large enough and
+ * otherwise decoding with source subsampling
+ */
+public class ThumbnailWriter
+{
+    private static final Logger LOGGER = Logger.getLogger(ThumbnailWriter.class);
+
+    /**
+     * Subsampled images are decoded at up to twice the thumbnail size so
+     * the final resize still smooths the image
+     */
+    private static final int OVERSAMPLING = 2;
+
+    /**
+     * Maximum difference between the aspect ratio of the embedded thumbnail
+     * and the image, larger differences indicate a letterboxed thumbnail
+     */
+    private static final double ASPECT_RATIO_TOLERANCE = 0.01;
+
+    private final int width;
+    private final int height;
+    private final double quality;
+
+    public ThumbnailWriter(int width, int height, double quality)
+    {
+        this.width = width;
+        this.height = height;
+        this.quality = quality;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public double getQuality()
+    {
+        return quality;
+    }
+
+    public void write(File inputFile, File outputFile) throws IOException
+    {
+        ExifHeaderReader exif = new ExifHeaderReader(inputFile);
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(inputFile))
+        {
+            ImageReader reader = getReader(input);
+
+            if (reader == null)
+            {
+                /**
+                 * Leave formats ImageIO can't identify to Thumbnailator
+                 */
+                Thumbnails.of(inputFile)
+                        .size(width, height)
+                        .outputQuality(quality)
+                        .toFile(outputFile);
+                return;
+            }
+
+            BufferedImage image;
+            int targetWidth;
+            int targetHeight;
+            String formatName;
+
+            try
+            {
+                reader.setInput(input, true, true);
+                formatName = reader.getFormatName();
+
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+
+                /**
+                 * Size the thumbnail from the full image as the subsampled image
+                 * dimensions are rounded up and can change the aspect ratio
+                 */
+                double sourceRatio = (double) sourceWidth / sourceHeight;
+                targetWidth = width;
+                targetHeight = height;
+
+                if (sourceRatio > (double) width / height)
+                {
+                    targetHeight = Math.max(1, (int) Math.round(width / sourceRatio));
+                }
+                else
+                {
+                    targetWidth = Math.max(1, (int) Math.round(height * sourceRatio));
+                }
+
+                image = readEmbeddedThumbnail(exif, targetWidth, targetHeight, sourceRatio);
+
+                if (image == null)
+                {
+                    int subsampling = Math.max(1, Math.min(sourceWidth / (width * OVERSAMPLING),
+                            sourceHeight / (height * OVERSAMPLING)));
+
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    image = reader.read(0, param);
+                }
+            }
+            finally
+            {
+                reader.dispose();
+            }
+
+            Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(image)
+                    .forceSize(targetWidth, targetHeight)
+                    .outputQuality(quality)
+                    .outputFormat(formatName);
+
+            Orientation orientation = Orientation.typeOf(exif.readOrientation());
+
+            if (orientation != null && orientation != Orientation.TOP_LEFT)
+            {
+                builder.addFilter(ExifFilterUtils.getFilterForOrientation(orientation));
+            }
+
+            builder.toFile(outputFile);
+        }
+    }
+
+    private static ImageReader getReader(ImageInputStream input)
+    {
+        if (input == null)
+        {
+            return null;
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+        if (!readers.hasNext())
+        {
+            return null;
+        }
+
+        return readers.next();
+    }
+
+    /**
+     * Decodes the embedded thumbnail if it has the same aspect ratio as the
+     * image and is at least as large as the requested thumbnail
+     */
+    private BufferedImage readEmbeddedThumbnail(ExifHeaderReader exif, int targetWidth, int targetHeight, double sourceRatio)
+    {
+        try
+        {
+            byte[] data = exif.readThumbnail();
+
+            if (data == null)
+            {
+                return null;
+            }
+
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(data));
+
+            if (thumbnail == null)
+            {
+                return null;
+            }
+
+            double thumbnailRatio = (double) thumbnail.getWidth() / thumbnail.getHeight();
+
+            if (thumbnail.getWidth() < targetWidth || thumbnail.getHeight() < targetHeight ||
+                Math.abs(thumbnailRatio - sourceRatio) > ASPECT_RATIO_TOLERANCE * sourceRatio)
+            {
+                return null;
+            }
+
+            return thumbnail;
+        }
+        catch (Throwable t)
+        {
+            LOGGER.debug("Failed to read embedded thumbnail, decoding image", t);
+            return null;
+        }
+    }
+}
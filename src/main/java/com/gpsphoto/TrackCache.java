@@ -0,0 +1,260 @@
+package com.gpsphoto;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary sidecar file holding a parsed GPX track as sorted primitive arrays
+ * so repeated loads of the same GPX file can memory map the track instead
+ * of parsing the GPX file again. The cache records the size and CRC32 of
+ * the GPX file it was built from and is ignored if either has changed.
+ *
+ * The file is a little endian header of magic, version, flags, GPX size,
+ * GPX CRC32, point count and padding followed by the time, latitude and longitude
+ * arrays and the elevation and HDOP arrays if the flags say they are present.
+ */
+public class TrackCache
+{
+    private static final Logger LOGGER = Logger.getLogger(TrackCache.class);
+
+    public static final String CACHE_FILE_EXTENSION = ".track";
+
+    private static final long MAGIC = 0x4B43415254585047L; // GPXTRACK
+    private static final int VERSION = 1;
+
+    private static final int FLAG_ELEVATIONS = 1;
+    private static final int FLAG_HDOPS = 2;
+
+    /**
+     * magic, version, flags, gpx size, gpx hash, count and padding to keep
+     * the arrays 8 byte aligned
+     */
+    private static final int HEADER_SIZE = 8 + 4 + 4 + 8 + 8 + 4 + 4;
+
+    /**
+     * GPX files are hashed in chunks so files over 2GB can be mapped
+     */
+    private static final long HASH_CHUNK_SIZE = 64L * 1024L * 1024L;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final File cacheFile;
+
+    public TrackCache(File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * The cache file for a GPX file in the output directory, named with a
+     * hash of the GPX file's folder so GPX files with the same name from
+     * different folders have their own caches
+     */
+    public static TrackCache forGPX(File gpxFile, File outputDir)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(gpxFile.getAbsoluteFile().getParent().getBytes(StandardCharsets.UTF_8));
+
+        return new TrackCache(new File(outputDir,
+            String.format("%s.%08x%s", gpxFile.getName(), crc.getValue(), CACHE_FILE_EXTENSION)));
+    }
+
+    public File getCacheFile()
+    {
+        return cacheFile;
+    }
+
+    /**
+     * Computes the CRC32 of a file reading it through memory mapped chunks
+     */
+    public static long hash(File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+
+            for (long position = 0L; position < size; position += HASH_CHUNK_SIZE)
+            {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_CHUNK_SIZE, size - position)));
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the cached track returning null if there is no cache file, it
+     * is invalid or it was built from a different GPX file
+     */
+    public TrackIndex read(long gpxSize, long gpxHash)
+    {
+        if (!cacheFile.isFile())
+        {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ))
+        {
+            /**
+             * The header is checked before mapping so stale caches are never
+             * mapped and can be replaced straight away
+             */
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (header.hasRemaining())
+            {
+                if (channel.read(header) < 0)
+                {
+                    return null;
+                }
+            }
+
+            header.flip();
+
+            if (header.getLong() != MAGIC || header.getInt() != VERSION)
+            {
+                return null;
+            }
+
+            int flags = header.getInt();
+
+            if (header.getLong() != gpxSize || header.getLong() != gpxHash)
+            {
+                return null;
+            }
+
+            int count = header.getInt();
+            int arrays = 3 + ((flags & FLAG_ELEVATIONS) != 0 ? 1 : 0) + ((flags & FLAG_HDOPS) != 0 ? 1 : 0);
+
+            if (count < 0 || channel.size() != HEADER_SIZE + 8L * count * arrays)
+            {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, channel.size() - HEADER_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            long[] times = new long[count];
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            double[] elevations = (flags & FLAG_ELEVATIONS) != 0 ? new double[count] : null;
+            double[] hdops = (flags & FLAG_HDOPS) != 0 ? new double[count] : null;
+
+            buffer.asLongBuffer().get(times);
+            buffer.position(buffer.position() + 8 * count);
+            readDoubles(buffer, latitudes);
+            readDoubles(buffer, longitudes);
+            readDoubles(buffer, elevations);
+            readDoubles(buffer, hdops);
+
+            for (int i = 1; i < count; ++i)
+            {
+                if (times[i - 1] > times[i])
+                {
+                    return null;
+                }
+            }
+
+            return new TrackIndex(times, latitudes, longitudes, elevations, hdops);
+        }
+        catch (Throwable t)
+        {
+            LOGGER.warn("Ignoring unreadable track cache: " + cacheFile, t);
+            return null;
+        }
+    }
+
+    private static void readDoubles(ByteBuffer buffer, double[] values)
+    {
+        if (values != null)
+        {
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + 8 * values.length);
+        }
+    }
+
+    /**
+     * Writes the track to the cache file through a temporary file
+     */
+    public void write(TrackIndex track, long gpxSize, long gpxHash) throws IOException
+    {
+        int flags = (track.hasElevations() ? FLAG_ELEVATIONS : 0) | (track.hasHdops() ? FLAG_HDOPS : 0);
+
+        File tempFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putLong(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(flags);
+            buffer.putLong(gpxSize);
+            buffer.putLong(gpxHash);
+            buffer.putInt(track.size());
+            buffer.putInt(0);
+
+            for (long time: track.getTimes())
+            {
+                if (buffer.remaining() < 8)
+                {
+                    flush(channel, buffer);
+                }
+
+                buffer.putLong(time);
+            }
+
+            writeDoubles(channel, buffer, track.getLatitudes());
+            writeDoubles(channel, buffer, track.getLongitudes());
+            writeDoubles(channel, buffer, track.getElevations());
+            writeDoubles(channel, buffer, track.getHdops());
+            flush(channel, buffer);
+        }
+
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException
+    {
+        if (values == null)
+        {
+            return;
+        }
+
+        for (double value: values)
+        {
+            if (buffer.remaining() < 8)
+            {
+                flush(channel, buffer);
+            }
+
+            buffer.putDouble(value);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
@@ -0,0 +1,547 @@
+package com.gpsphoto;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GPS track stored as parallel primitive arrays of UTC time in milliseconds
+ * and WGS84 latitude and longitude, sorted by increasing time so that
+ * positions can be binary searched. Elevation and HDOP are only held when
+ * the track has them.
+ */
+public class TrackIndex
+{
+    private final long[] times;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] elevations;
+    private final double[] hdops;
+
+    /**
+     * Creates an index from arrays already sorted by time, elevations and
+     * hdops may be null
+     */
+    TrackIndex(long[] times, double[] latitudes, double[] longitudes, double[] elevations, double[] hdops)
+    {
+        this.times = times;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.elevations = elevations;
+        this.hdops = hdops;
+    }
+
+    /**
+     * Builds a track index from a list of positions in any order
+     */
+    public static TrackIndex of(List<GPSPosition> positions)
+    {
+        Builder builder = new Builder(positions.size());
+
+        for (GPSPosition position: positions)
+        {
+            builder.add(position.getLatitude(), position.getLongitude(), position.getUTCTime().getTime());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Merges tracks that are each sorted by time into a single track with a
+     * k-way merge. Where tracks have positions at the same time, every
+     * position at that time is taken from the track with the lowest HDOP
+     * there, or from the earliest track if the HDOP is unknown, so positions
+     * from different tracks are never mixed at one time.
+     */
+    public static TrackIndex merge(List<TrackIndex> tracks)
+    {
+        if (tracks.size() == 1)
+        {
+            return tracks.get(0);
+        }
+
+        TrackIndex[] sources = tracks.toArray(new TrackIndex[tracks.size()]);
+        int total = 0;
+        boolean hasElevations = false;
+        boolean hasHdops = false;
+
+        for (TrackIndex source: sources)
+        {
+            total += source.size();
+            hasElevations |= source.hasElevations();
+            hasHdops |= source.hasHdops();
+        }
+
+        long[] times = new long[total];
+        double[] latitudes = new double[total];
+        double[] longitudes = new double[total];
+        double[] elevations = hasElevations ? new double[total] : null;
+        double[] hdops = hasHdops ? new double[total] : null;
+
+        /**
+         * Min heap of the tracks with positions left ordered by the time of
+         * their next position and then by track
+         */
+        int[] positions = new int[sources.length];
+        int[] heap = new int[sources.length];
+        int heapSize = 0;
+
+        for (int track = 0; track < sources.length; ++track)
+        {
+            if (!sources[track].isEmpty())
+            {
+                heap[heapSize++] = track;
+            }
+        }
+
+        for (int i = heapSize / 2 - 1; i >= 0; --i)
+        {
+            siftDown(heap, heapSize, i, sources, positions);
+        }
+
+        int size = 0;
+        int[] groupTracks = new int[sources.length];
+        int[] groupEnds = new int[sources.length];
+
+        while (heapSize > 0)
+        {
+            /**
+             * Take every track with positions at the next time off the heap,
+             * in track order, with the end of their positions at that time
+             */
+            long time = sources[heap[0]].times[positions[heap[0]]];
+            int groupSize = 0;
+
+            while (heapSize > 0 && sources[heap[0]].times[positions[heap[0]]] == time)
+            {
+                int track = heap[0];
+                groupTracks[groupSize] = track;
+                groupEnds[groupSize++] = sources[track].findTime(positions[track], time, false);
+
+                heap[0] = heap[--heapSize];
+                siftDown(heap, heapSize, 0, sources, positions);
+            }
+
+            int winner = 0;
+
+            for (int group = 1; group < groupSize; ++group)
+            {
+                if (isMoreAccurate(getLowestHdop(sources[groupTracks[group]], positions[groupTracks[group]], groupEnds[group]),
+                    getLowestHdop(sources[groupTracks[winner]], positions[groupTracks[winner]], groupEnds[winner])))
+                {
+                    winner = group;
+                }
+            }
+
+            TrackIndex source = sources[groupTracks[winner]];
+
+            for (int index = positions[groupTracks[winner]]; index < groupEnds[winner]; ++index)
+            {
+                times[size] = source.times[index];
+                latitudes[size] = source.latitudes[index];
+                longitudes[size] = source.longitudes[index];
+
+                if (elevations != null)
+                {
+                    elevations[size] = source.getElevation(index);
+                }
+
+                if (hdops != null)
+                {
+                    hdops[size] = source.getHdop(index);
+                }
+
+                ++size;
+            }
+
+            for (int group = 0; group < groupSize; ++group)
+            {
+                int track = groupTracks[group];
+                positions[track] = groupEnds[group];
+
+                if (positions[track] < sources[track].size())
+                {
+                    heap[heapSize] = track;
+                    siftUp(heap, heapSize++, sources, positions);
+                }
+            }
+        }
+
+        if (size < total)
+        {
+            times = Arrays.copyOf(times, size);
+            latitudes = Arrays.copyOf(latitudes, size);
+            longitudes = Arrays.copyOf(longitudes, size);
+            elevations = elevations == null ? null : Arrays.copyOf(elevations, size);
+            hdops = hdops == null ? null : Arrays.copyOf(hdops, size);
+        }
+
+        return new TrackIndex(times, latitudes, longitudes, elevations, hdops);
+    }
+
+    private static boolean isMoreAccurate(double hdop, double currentHdop)
+    {
+        return !Double.isNaN(hdop) && (Double.isNaN(currentHdop) || hdop < currentHdop);
+    }
+
+    /**
+     * The lowest known HDOP of a range of positions or NaN if none is known
+     */
+    private static double getLowestHdop(TrackIndex source, int from, int to)
+    {
+        double lowest = Double.NaN;
+
+        for (int index = from; index < to; ++index)
+        {
+            if (isMoreAccurate(source.getHdop(index), lowest))
+            {
+                lowest = source.getHdop(index);
+            }
+        }
+
+        return lowest;
+    }
+
+    private static void siftUp(int[] heap, int index, TrackIndex[] sources, int[] positions)
+    {
+        while (index > 0)
+        {
+            int parent = (index - 1) >>> 1;
+
+            if (!isBefore(heap[index], heap[parent], sources, positions))
+            {
+                return;
+            }
+
+            int swap = heap[index];
+            heap[index] = heap[parent];
+            heap[parent] = swap;
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int index, TrackIndex[] sources, int[] positions)
+    {
+        while (true)
+        {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+
+            if (left < heapSize && isBefore(heap[left], heap[smallest], sources, positions))
+            {
+                smallest = left;
+            }
+
+            if (right < heapSize && isBefore(heap[right], heap[smallest], sources, positions))
+            {
+                smallest = right;
+            }
+
+            if (smallest == index)
+            {
+                return;
+            }
+
+            int swap = heap[index];
+            heap[index] = heap[smallest];
+            heap[smallest] = swap;
+            index = smallest;
+        }
+    }
+
+    private static boolean isBefore(int track, int otherTrack, TrackIndex[] sources, int[] positions)
+    {
+        long time = sources[track].times[positions[track]];
+        long otherTime = sources[otherTrack].times[positions[otherTrack]];
+        return time < otherTime || (time == otherTime && track < otherTrack);
+    }
+
+    public int size()
+    {
+        return times.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return times.length == 0;
+    }
+
+    public long getTime(int index)
+    {
+        return times[index];
+    }
+
+    public double getLatitude(int index)
+    {
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index)
+    {
+        return longitudes[index];
+    }
+
+    public boolean hasElevations()
+    {
+        return elevations != null;
+    }
+
+    /**
+     * The elevation in metres or NaN if the position has no elevation
+     */
+    public double getElevation(int index)
+    {
+        return elevations == null ? Double.NaN : elevations[index];
+    }
+
+    public boolean hasHdops()
+    {
+        return hdops != null;
+    }
+
+    /**
+     * The horizontal dilution of precision or NaN if the position has none
+     */
+    public double getHdop(int index)
+    {
+        return hdops == null ? Double.NaN : hdops[index];
+    }
+
+    long[] getTimes()
+    {
+        return times;
+    }
+
+    double[] getLatitudes()
+    {
+        return latitudes;
+    }
+
+    double[] getLongitudes()
+    {
+        return longitudes;
+    }
+
+    double[] getElevations()
+    {
+        return elevations;
+    }
+
+    double[] getHdops()
+    {
+        return hdops;
+    }
+
+    /**
+     * Binary search for the index of the first position at or after (inclusive)
+     * or strictly after (exclusive) the requested time starting at from, returning
+     * the size of the index if there is no such position
+     */
+    public int findTime(int from, long time, boolean inclusive)
+    {
+        int low = from;
+        int high = times.length;
+
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            long middleTime = times[middle];
+
+            if (middleTime < time || (!inclusive && middleTime == time))
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Accumulates positions in growable primitive arrays and sorts them once
+     * by time when the index is built. Elevations and HDOPs are only stored
+     * once the first known value arrives.
+     */
+    public static class Builder
+    {
+        private long[] times;
+        private double[] latitudes;
+        private double[] longitudes;
+        private double[] elevations = null;
+        private double[] hdops = null;
+        private int size = 0;
+
+        public Builder()
+        {
+            this(1024);
+        }
+
+        public Builder(int initialCapacity)
+        {
+            int capacity = Math.max(16, initialCapacity);
+            times = new long[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+        }
+
+        public void add(double latitude, double longitude, long time)
+        {
+            add(latitude, longitude, Double.NaN, Double.NaN, time);
+        }
+
+        /**
+         * Adds a position with an elevation and HDOP which may be NaN if unknown
+         */
+        public void add(double latitude, double longitude, double elevation, double hdop, long time)
+        {
+            if (size == times.length)
+            {
+                int capacity = times.length + (times.length >> 1);
+                times = Arrays.copyOf(times, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                elevations = elevations == null ? null : Arrays.copyOf(elevations, capacity);
+                hdops = hdops == null ? null : Arrays.copyOf(hdops, capacity);
+            }
+
+            times[size] = time;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+
+            if (elevations == null && !Double.isNaN(elevation))
+            {
+                elevations = createUnknown();
+            }
+
+            if (elevations != null)
+            {
+                elevations[size] = elevation;
+            }
+
+            if (hdops == null && !Double.isNaN(hdop))
+            {
+                hdops = createUnknown();
+            }
+
+            if (hdops != null)
+            {
+                hdops[size] = hdop;
+            }
+
+            ++size;
+        }
+
+        /**
+         * Creates an array at the current capacity with the positions added
+         * so far marked unknown
+         */
+        private double[] createUnknown()
+        {
+            double[] values = new double[times.length];
+            Arrays.fill(values, 0, size, Double.NaN);
+            return values;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Sorts the positions by time keeping positions that share a time in
+         * the order they were added and trims the arrays to size
+         */
+        public TrackIndex build()
+        {
+            long[] sortedTimes = Arrays.copyOf(times, size);
+            double[] sortedLatitudes = Arrays.copyOf(latitudes, size);
+            double[] sortedLongitudes = Arrays.copyOf(longitudes, size);
+            double[] sortedElevations = elevations == null ? null : Arrays.copyOf(elevations, size);
+            double[] sortedHdops = hdops == null ? null : Arrays.copyOf(hdops, size);
+
+            if (!isSorted(sortedTimes))
+            {
+                int[] order = sortOrder(sortedTimes);
+
+                for (int i = 0; i < size; ++i)
+                {
+                    sortedTimes[i] = times[order[i]];
+                    sortedLatitudes[i] = latitudes[order[i]];
+                    sortedLongitudes[i] = longitudes[order[i]];
+
+                    if (sortedElevations != null)
+                    {
+                        sortedElevations[i] = elevations[order[i]];
+                    }
+
+                    if (sortedHdops != null)
+                    {
+                        sortedHdops[i] = hdops[order[i]];
+                    }
+                }
+            }
+
+            return new TrackIndex(sortedTimes, sortedLatitudes, sortedLongitudes, sortedElevations, sortedHdops);
+        }
+
+        private static boolean isSorted(long[] keys)
+        {
+            for (int i = 1; i < keys.length; ++i)
+            {
+                if (keys[i - 1] > keys[i])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Stable bottom up merge sort of the indices of the keys
+         */
+        private static int[] sortOrder(long[] keys)
+        {
+            int length = keys.length;
+            int[] order = new int[length];
+            int[] buffer = new int[length];
+
+            for (int i = 0; i < length; ++i)
+            {
+                order[i] = i;
+            }
+
+            for (int width = 1; width < length; width <<= 1)
+            {
+                for (int low = 0; low < length; low += width << 1)
+                {
+                    int middle = Math.min(low + width, length);
+                    int high = Math.min(low + (width << 1), length);
+                    int left = low;
+                    int right = middle;
+
+                    for (int i = low; i < high; ++i)
+                    {
+                        if (left < middle && (right >= high || keys[order[left]] <= keys[order[right]]))
+                        {
+                            buffer[i] = order[left++];
+                        }
+                        else
+                        {
+                            buffer[i] = order[right++];
+                        }
+                    }
+                }
+
+                int[] swap = order;
+                order = buffer;
+                buffer = swap;
+            }
+
+            return order;
+        }
+    }
+}
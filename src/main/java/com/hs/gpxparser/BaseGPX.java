@@ -2,6 +2,7 @@ package com.hs.gpxparser;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.TimeZone;
 
 import com.hs.gpxparser.extension.IExtensionParser;
 
@@ -10,6 +11,11 @@ class BaseGPX {
 	protected final SimpleDateFormat xmlDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 	protected final ArrayList<IExtensionParser> extensionParsers = new ArrayList<IExtensionParser>();
 
+	BaseGPX() {
+		// gpx times are UTC
+		this.xmlDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+
 	/**
 	 * Adds a new extension parser to be used when parsing a gpx steam
 	 *
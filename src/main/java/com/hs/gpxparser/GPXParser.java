@@ -508,8 +508,7 @@ public class GPXParser extends BaseGPX {
 	private Date getNodeValueAsDate(Node node) throws DOMException, ParseException {
 		Date val = null;
 		try {
-			val = xmlDateFormat.parse(node.getFirstChild().getNodeValue()
-					.replaceAll("([0-9\\-T]+:[0-9]{2}:[0-9.+]+):([0-9]{2})", "$1$2"));
+			val = new Date(GPXTimeDecoder.parse(node.getFirstChild().getNodeValue()));
 		} catch (ParseException e) {
 			e.printStackTrace();
 		} catch (Exception e) {
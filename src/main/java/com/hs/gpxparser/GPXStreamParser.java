@@ -0,0 +1,206 @@
+package com.hs.gpxparser;
+
+import java.io.InputStream;
+import java.util.HashMap;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.hs.gpxparser.extension.IExtensionParser;
+
+/**
+ * <p>
+ * This class streams the track points of a gpx file to a handler without
+ * building a document for the whole file, so memory use does not grow with
+ * the size of the file. Only track points are read, waypoints, routes and
+ * metadata are skipped.
+ * </p>
+ * <br>
+ * Extension parsers are passed a small document holding just the extensions
+ * node of each track point.<br>
+ * <br>
+ * Usage:<br>
+ * <code>
+ * GPXStreamParser p = new GPXStreamParser();<br>
+ * FileInputStream in = new FileInputStream("inFile.gpx");<br>
+ * int count = p.parseTrackPoints(in, handler);<br>
+ * </code>
+ */
+public class GPXStreamParser extends BaseGPX {
+
+	private DocumentBuilder extensionBuilder;
+
+	/**
+	 * Parses the track points in a stream containing GPX data
+	 *
+	 * @param in
+	 *            the input stream
+	 * @param handler
+	 *            the handler passed each track point in file order
+	 * @return the number of track points read
+	 * @throws Exception
+	 */
+	public int parseTrackPoints(InputStream in, ITrackPointHandler handler) throws Exception {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+		try {
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+				// skip the prolog
+			}
+			if (!reader.isStartElement() || !GPXConstants.NODE_GPX.equals(reader.getLocalName())) {
+				throw new IllegalAccessException("Not a valid GPX file.");
+			}
+
+			int count = 0;
+
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& GPXConstants.NODE_TRKPT.equals(reader.getLocalName())) {
+					this.parseTrackPoint(reader, handler);
+					count++;
+				}
+			}
+
+			return count;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private void parseTrackPoint(XMLStreamReader reader, ITrackPointHandler handler) throws Exception {
+		String lat = reader.getAttributeValue(null, GPXConstants.ATTR_LAT);
+		if (lat == null) {
+			throw new Exception("no lat value in waypoint data.");
+		}
+		String lon = reader.getAttributeValue(null, GPXConstants.ATTR_LON);
+		if (lon == null) {
+			throw new Exception("no lon value in waypoint data.");
+		}
+
+		double latitude = Double.parseDouble(lat);
+		double longitude = Double.parseDouble(lon);
+		double elevation = Double.NaN;
+		double hdop = Double.NaN;
+		long time = ITrackPointHandler.NO_TIME;
+		HashMap<String, Object> extensionData = null;
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if (GPXConstants.NODE_TIME.equals(name)) {
+				time = this.parseTime(reader);
+			} else if (GPXConstants.NODE_ELE.equals(name)) {
+				elevation = this.parseDouble(reader);
+			} else if (GPXConstants.NODE_HDOP.equals(name)) {
+				hdop = this.parseDouble(reader);
+			} else if (GPXConstants.NODE_EXTENSIONS.equals(name) && !this.extensionParsers.isEmpty()) {
+				Node extensions = this.readElement(reader, this.getExtensionBuilder().newDocument());
+				extensionData = new HashMap<String, Object>();
+				for (IExtensionParser parser : this.extensionParsers) {
+					extensionData.put(parser.getId(), parser.parseExtensions(extensions));
+				}
+			} else {
+				this.skipElement(reader);
+			}
+		}
+
+		handler.handleTrackPoint(latitude, longitude, elevation, hdop, time, extensionData);
+	}
+
+	/**
+	 * Reads the text of a numeric node returning NaN if it is not a number,
+	 * leaving the reader on the end of the element
+	 */
+	private double parseDouble(XMLStreamReader reader) throws XMLStreamException {
+		String text = reader.getElementText();
+		try {
+			return Double.parseDouble(text.trim());
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Decodes the text of a time node straight from the reader's character
+	 * buffer, leaving the reader on the end of the element
+	 */
+	private long parseTime(XMLStreamReader reader) throws XMLStreamException {
+		long time = ITrackPointHandler.NO_TIME;
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				time = GPXTimeDecoder.decode(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				this.skipElement(reader);
+			}
+		}
+		return time;
+	}
+
+	/**
+	 * Skips the current element and all of its children
+	 */
+	private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Copies the current element and all of its children into a new node
+	 * owned by the document, leaving the reader on the end of the element
+	 */
+	private Node readElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+		Element element = doc.createElement(this.getQualifiedName(reader));
+		for (int idx = 0; idx < reader.getAttributeCount(); idx++) {
+			String prefix = reader.getAttributePrefix(idx);
+			String name = reader.getAttributeLocalName(idx);
+			element.setAttribute(prefix == null || prefix.isEmpty() ? name : prefix + ":" + name,
+					reader.getAttributeValue(idx));
+		}
+
+		while (true) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				element.appendChild(this.readElement(reader, doc));
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE) {
+				element.appendChild(doc.createTextNode(reader.getText()));
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return element;
+			}
+		}
+	}
+
+	private String getQualifiedName(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.isEmpty()) {
+			return reader.getLocalName();
+		}
+		return prefix + ":" + reader.getLocalName();
+	}
+
+	private DocumentBuilder getExtensionBuilder() throws Exception {
+		if (this.extensionBuilder == null) {
+			this.extensionBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		}
+		return this.extensionBuilder;
+	}
+}
@@ -0,0 +1,198 @@
+package com.hs.gpxparser;
+
+import java.text.ParseException;
+
+/**
+ * <p>
+ * Decodes xsd:dateTime text as used by gpx time nodes into UTC milliseconds
+ * since the epoch without allocating, compiling patterns or creating dates.
+ * </p>
+ * <br>
+ * Supported forms are <code>yyyy-MM-ddTHH:mm:ss</code> followed by optional
+ * fractional seconds of any length (truncated to milliseconds) and an optional
+ * zone of <code>Z</code>, <code>+hh:mm</code>, <code>-hh:mm</code>,
+ * <code>+hhmm</code> or <code>+hh</code>. Times without a zone are taken to be
+ * UTC as required by the gpx schema. Leading and trailing white space is ignored.
+ */
+public final class GPXTimeDecoder {
+
+	/**
+	 * Returned by {@link #decode(char[], int, int)} for text that is not a valid
+	 * time, equal to {@link ITrackPointHandler#NO_TIME}
+	 */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	private static final long MILLIS_PER_SECOND = 1000L;
+	private static final long MILLIS_PER_MINUTE = 60L * MILLIS_PER_SECOND;
+	private static final long MILLIS_PER_HOUR = 60L * MILLIS_PER_MINUTE;
+	private static final long MILLIS_PER_DAY = 24L * MILLIS_PER_HOUR;
+
+	private GPXTimeDecoder() {
+	}
+
+	/**
+	 * Decodes a time, throwing if the text is not a valid time
+	 *
+	 * @param text
+	 *            the time text
+	 * @return UTC milliseconds since the epoch
+	 * @throws ParseException
+	 *             if the text is not a valid time
+	 */
+	public static long parse(String text) throws ParseException {
+		long time = decode(text.toCharArray(), 0, text.length());
+		if (time == INVALID) {
+			throw new ParseException("Unparseable time: \"" + text + "\"", 0);
+		}
+		return time;
+	}
+
+	/**
+	 * Decodes a time from a range of characters
+	 *
+	 * @param chars
+	 *            the characters holding the time
+	 * @param offset
+	 *            the index of the first character of the time
+	 * @param length
+	 *            the number of characters in the time
+	 * @return UTC milliseconds since the epoch or {@link #INVALID}
+	 */
+	public static long decode(char[] chars, int offset, int length) {
+		int pos = offset;
+		int end = offset + length;
+
+		while (pos < end && isWhitespace(chars[pos])) {
+			pos++;
+		}
+		while (end > pos && isWhitespace(chars[end - 1])) {
+			end--;
+		}
+
+		// yyyy-MM-ddTHH:mm:ss is 19 characters
+		if (end - pos < 19 || chars[pos + 4] != '-' || chars[pos + 7] != '-'
+				|| (chars[pos + 10] != 'T' && chars[pos + 10] != 't') || chars[pos + 13] != ':'
+				|| chars[pos + 16] != ':') {
+			return INVALID;
+		}
+
+		int year = digits(chars, pos, 4);
+		int month = digits(chars, pos + 5, 2);
+		int day = digits(chars, pos + 8, 2);
+		int hour = digits(chars, pos + 11, 2);
+		int minute = digits(chars, pos + 14, 2);
+		int second = digits(chars, pos + 17, 2);
+
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour < 0
+				|| minute < 0 || minute > 59 || second < 0 || second > 60) {
+			return INVALID;
+		}
+
+		// 24:00:00 is the end of the day
+		if (hour > 24 || (hour == 24 && (minute != 0 || second != 0))) {
+			return INVALID;
+		}
+
+		pos += 19;
+
+		long millis = 0L;
+		if (pos < end && chars[pos] == '.') {
+			pos++;
+			int start = pos;
+			long scale = 100L;
+			while (pos < end && isDigit(chars[pos])) {
+				millis += scale * (chars[pos] - '0');
+				scale /= 10L;
+				pos++;
+			}
+			if (pos == start) {
+				return INVALID;
+			}
+		}
+
+		long offsetMillis = 0L;
+		if (pos < end) {
+			char zone = chars[pos];
+			if ((zone == 'Z' || zone == 'z') && pos + 1 == end) {
+				pos++;
+			} else if (zone == '+' || zone == '-') {
+				int remaining = end - pos - 1;
+				int offsetHours;
+				int offsetMinutes = 0;
+				if (remaining == 2) {
+					offsetHours = digits(chars, pos + 1, 2);
+				} else if (remaining == 4) {
+					offsetHours = digits(chars, pos + 1, 2);
+					offsetMinutes = digits(chars, pos + 3, 2);
+				} else if (remaining == 5 && chars[pos + 3] == ':') {
+					offsetHours = digits(chars, pos + 1, 2);
+					offsetMinutes = digits(chars, pos + 4, 2);
+				} else {
+					return INVALID;
+				}
+				if (offsetHours < 0 || offsetHours > 14 || offsetMinutes < 0 || offsetMinutes > 59) {
+					return INVALID;
+				}
+				offsetMillis = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+				if (zone == '-') {
+					offsetMillis = -offsetMillis;
+				}
+				pos = end;
+			} else {
+				return INVALID;
+			}
+		}
+
+		return daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR
+				+ minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis - offsetMillis;
+	}
+
+	/**
+	 * Reads a fixed number of decimal digits returning -1 if any are not digits
+	 */
+	private static int digits(char[] chars, int offset, int count) {
+		int value = 0;
+		for (int idx = offset; idx < offset + count; idx++) {
+			char c = chars[idx];
+			if (!isDigit(c)) {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
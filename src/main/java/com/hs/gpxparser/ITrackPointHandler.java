@@ -0,0 +1,35 @@
+package com.hs.gpxparser;
+
+import java.util.HashMap;
+
+/**
+ * Receives track points as they are read by a {@link GPXStreamParser}
+ */
+public interface ITrackPointHandler {
+
+	/**
+	 * Time passed for track points that have no time node
+	 */
+	public long NO_TIME = Long.MIN_VALUE;
+
+	/**
+	 * Handles a single track point
+	 *
+	 * @param latitude
+	 *            the latitude of the point
+	 * @param longitude
+	 *            the longitude of the point
+	 * @param elevation
+	 *            the elevation of the point or NaN if it has no ele node
+	 * @param hdop
+	 *            the horizontal dilution of precision of the point or NaN if
+	 *            it has no hdop node
+	 * @param time
+	 *            the time of the point in milliseconds or {@link #NO_TIME}
+	 * @param extensionData
+	 *            extension data keyed by extension parser id, or null if the
+	 *            point has no extensions
+	 */
+	public void handleTrackPoint(double latitude, double longitude, double elevation, double hdop, long time, HashMap<String, Object> extensionData);
+
+}
@@ -0,0 +1,73 @@
+package com.rhis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assigns each survey field path a stable column index, new fields are
+ * appended as columns in the order they are first seen.
+ *
+ * Columns are headed by their field name, or by their full path when an
+ * earlier column already uses the name. The type of each column is joined
+ * with every value added to it, giving the type of the whole column once
+ * every survey has been added.
+ */
+public class ColumnRegistry
+{
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<String> headers = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final List<ColumnType> columnTypes = new ArrayList<>();
+
+    /**
+     * The column for a field path, registering a new column if the path
+     * has not been seen before
+     */
+    public int getColumn(String path, String name)
+    {
+        Integer column = columns.get(path);
+
+        if (column == null)
+        {
+            column = headers.size();
+            columns.put(path, column);
+            headers.add(names.add(name) ? name : path);
+            columnTypes.add(ColumnType.BLANK);
+        }
+
+        return column;
+    }
+
+    /**
+     * Joins a value into the type of its column, values of text columns are
+     * not parsed
+     */
+    public void addValue(int column, String value)
+    {
+        ColumnType columnType = columnTypes.get(column);
+
+        if (columnType != ColumnType.TEXT)
+        {
+            columnTypes.set(column, columnType.join(ColumnType.of(value)));
+        }
+    }
+
+    public List<String> getHeaders()
+    {
+        return headers;
+    }
+
+    public List<ColumnType> getColumnTypes()
+    {
+        return columnTypes;
+    }
+
+    public int size()
+    {
+        return headers.size();
+    }
+}
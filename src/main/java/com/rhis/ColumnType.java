@@ -0,0 +1,59 @@
+package com.rhis;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The type of a column inferred from the values seen so far, ordered so a
+ * column only moves up from blank to number to text as values arrive
+ */
+public enum ColumnType
+{
+    BLANK,
+    NUMBER,
+    TEXT;
+
+    /**
+     * The type of a single value
+     */
+    public static ColumnType of(String value)
+    {
+        if (StringUtils.isBlank(value))
+        {
+            return BLANK;
+        }
+
+        return isNumber(value) ? NUMBER : TEXT;
+    }
+
+    /**
+     * The lowest type holding both types
+     */
+    public ColumnType join(ColumnType other)
+    {
+        return other.ordinal() > ordinal() ? other : this;
+    }
+
+    /**
+     * Checks if a value parses as a double, rejecting values that can't
+     * be numbers before paying for a failed parse
+     */
+    private static boolean isNumber(String value)
+    {
+        char first = value.trim().charAt(0);
+
+        if (!Character.isDigit(first) && first != '-' && first != '+' && first != '.' && first != 'N' && first != 'I')
+        {
+            return false;
+        }
+
+        try
+        {
+            Double.parseDouble(value);
+            return true;
+        }
+        catch (NumberFormatException n)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.rhis;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Streams survey rows to a UTF-8 CSV file
+ */
+public class CsvRowSink implements RowSink
+{
+    private final CSVPrinter printer;
+
+    public CsvRowSink(File outputFile) throws IOException
+    {
+        this.printer = new CSVPrinter(Files.newBufferedWriter(outputFile.toPath(), StandardCharsets.UTF_8), CSVFormat.DEFAULT);
+    }
+
+    @Override
+    public void writeHeader(List<String> headers, List<ColumnType> columnTypes) throws IOException
+    {
+        printer.printRecord(headers);
+    }
+
+    @Override
+    public void writeRow(List<String> values) throws IOException
+    {
+        printer.printRecord(values);
+    }
+
+    @Override
+    public void abort()
+    {
+        IOUtils.closeQuietly(printer);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        printer.close();
+    }
+}
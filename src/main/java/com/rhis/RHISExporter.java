@@ -1,228 +1,526 @@
 package com.rhis;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.apache.commons.cli.*;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
-import org.apache.poi.hssf.usermodel.HSSFDataFormat;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.*;
 
 import java.io.*;
-import java.util.Collection;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Exports RHIS as a single CSV
+ * Exports RHIS as a single CSV or Excel spreadsheet
+ *
+ * Surveys are decompressed and parsed in parallel and their rows are written
+ * in survey file order. Every field path seen in any survey gets its own
+ * column, so surveys of different versions line up, and as the header is
+ * only known once every survey is parsed rows are spooled to a compressed
+ * temporary file beside the output file and copied behind the header at the
+ * end. The output file extension
+ * selects the format: .csv and .xlsx are streamed with bounded memory while
+ * .xls is built in memory.
  */
 public class RHISExporter
 {
     private static final Logger LOGGER = Logger.getLogger(RHISExporter.class);
 
+    /**
+     * Parsed surveys waiting to be written per thread before parsing blocks
+     */
+    private static final int SURVEYS_QUEUED_PER_THREAD = 4;
+
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    private static final int SPOOL_BUFFER_SIZE = 64 * 1024;
+
     private String inputDirectory;
     private final boolean recursive;
     private final String outputFile;
+    private final int threads;
 
-    private Workbook wb = new HSSFWorkbook();
-    private Sheet sheet = wb.createSheet("RHIS data");
-    private Row headerRow = sheet.createRow(0);
-    private int rowNumber = 1;
-    private int maxColumns = 0;
+    private RowSink sink;
+    private ColumnRegistry columns;
+    private CSVPrinter spool;
 
     public RHISExporter(String inputDirectory, boolean recursive, String outputFile)
+    {
+        this(inputDirectory, recursive, outputFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the number of surveys to decompress and parse at once
+     */
+    public RHISExporter(String inputDirectory, boolean recursive, String outputFile, int threads)
     {
         this.inputDirectory = inputDirectory;
         this.recursive = recursive;
         this.outputFile = outputFile;
+        this.threads = Math.max(1, threads);
     }
 
     public int export() throws IOException, CompressorException
     {
-        Collection<File> surveyFiles = FileUtils.listFiles(new File(inputDirectory), new String[] { "survey" }, recursive);
+        File inputDir = new File(inputDirectory);
 
-        for (File survey: surveyFiles)
+        if (!inputDir.isDirectory())
         {
-            LOGGER.info("Found survey: " + survey);
-            String json = loadCompressedJson(survey);
-            processJson(json);
+            throw new FileNotFoundException("Survey folder not found: " + inputDirectory);
         }
 
-        makeColumnsNumeric();
+        sink = createSink(new File(outputFile));
+        columns = new ColumnRegistry();
+        spool = null;
 
-        FileOutputStream out = new FileOutputStream(outputFile);
-        wb.write(out);
-        out.close();
+        File spoolFile = null;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
 
-        return surveyFiles.size();
+        boolean complete = false;
+        int count = 0;
 
-    }
-
-    public boolean isDouble(String value)
-    {
-        if (StringUtils.isBlank(value))
+        try
         {
-            return true;
+            spoolFile = createSpoolFile(new File(outputFile));
+            spool = new CSVPrinter(openSpoolWriter(spoolFile), CSVFormat.DEFAULT);
+
+            /**
+             * Surveys are parsed in parallel but written in order, waiting on
+             * the oldest survey once enough parsed rows are queued
+             */
+            Deque<Future<SurveyRow>> pending = new ArrayDeque<>();
+            Iterator<File> surveys = new SurveyIterator(inputDir, recursive);
+
+            while (surveys.hasNext())
+            {
+                final File survey = surveys.next();
+
+                LOGGER.debug("Found survey: " + survey);
+
+                if (++count % PROGRESS_INTERVAL == 0)
+                {
+                    LOGGER.info(String.format("Parsed: [%d] surveys", count - pending.size()));
+                }
+
+                pending.add(executor.submit(new Callable<SurveyRow>()
+                {
+                    @Override
+                    public SurveyRow call() throws IOException, CompressorException
+                    {
+                        return parseSurvey(survey);
+                    }
+                }));
+
+                if (pending.size() >= threads * SURVEYS_QUEUED_PER_THREAD)
+                {
+                    spoolRow(pending.poll().get());
+                }
+            }
+
+            while (!pending.isEmpty())
+            {
+                spoolRow(pending.poll().get());
+            }
+
+            spool.close();
+
+            if (count > 0)
+            {
+                writeSpool(spoolFile);
+            }
+
+            sink.close();
+            complete = true;
         }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
 
-        try
+            if (e.getCause() instanceof CompressorException)
+            {
+                throw (CompressorException) e.getCause();
+            }
+
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IOException("Failed to parse survey", e.getCause());
+        }
+        catch (InterruptedException e)
         {
-            Double.parseDouble(value);
-            return true;
+            throw new InterruptedIOException("Interrupted while exporting surveys");
         }
-        catch (NumberFormatException n)
+        finally
         {
-            return false;
+            executor.shutdownNow();
+
+            IOUtils.closeQuietly(spool);
+            FileUtils.deleteQuietly(spoolFile);
+
+            /**
+             * Don't leave a partial export behind
+             */
+            if (!complete)
+            {
+                sink.abort();
+                FileUtils.deleteQuietly(new File(outputFile));
+            }
         }
+
+        return count;
+
     }
-    private void makeColumnsNumeric()
+
+    /**
+     * Creates the hidden spool file beside the output file, so the spool
+     * lands on the disk that has room for the export rather than in the
+     * temporary folder
+     */
+    private static File createSpoolFile(File file) throws IOException
     {
-        for (int column = 0; column < maxColumns; ++column)
-        {
-            boolean allNumeric = true;
+        return File.createTempFile("." + file.getName() + ".", ".spool", file.getAbsoluteFile().getParentFile());
+    }
 
-            for (int row = 1; row < rowNumber; ++row)
+    /**
+     * Spooled rows are compressed as they are written, favouring speed
+     * over size as the spool is only read back once
+     */
+    private static Writer openSpoolWriter(File spoolFile) throws IOException
+    {
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(spoolFile), SPOOL_BUFFER_SIZE)
+        {
             {
-                String value = sheet.getRow(row).getCell(column).getStringCellValue();
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
 
-                if (StringUtils.isNotBlank(value) && !isDouble(value))
-                {
-                    allNumeric = false;
-                    break;
-                }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), SPOOL_BUFFER_SIZE);
+    }
+
+    private static Reader openSpoolReader(File spoolFile) throws IOException
+    {
+        InputStream in = new GZIPInputStream(new FileInputStream(spoolFile), SPOOL_BUFFER_SIZE);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), SPOOL_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates the sink for the output format selected by the file extension
+     */
+    private static RowSink createSink(File file) throws IOException
+    {
+        if (file.getName().toLowerCase().endsWith(".csv"))
+        {
+            return new CsvRowSink(file);
+        }
+
+        return new WorkbookRowSink(file);
+    }
+
+    public boolean isDouble(String value)
+    {
+        return WorkbookRowSink.isDouble(value);
+    }
+
+    /**
+     * Decompresses and parses a survey into a row, called on the parsing threads
+     */
+    private SurveyRow parseSurvey(File survey) throws IOException, CompressorException
+    {
+        try (ZipFile zipFile = new ZipFile(survey))
+        {
+            ZipArchiveEntry surveyEntry = zipFile.getEntry("survey.json");
+
+            if (surveyEntry == null)
+            {
+                throw new IOException("Survey has no survey.json: " + survey);
             }
 
-            if (allNumeric)
+            try (JsonReader reader = new JsonReader(new InputStreamReader(zipFile.getInputStream(surveyEntry), StandardCharsets.UTF_8)))
             {
-                CellStyle numberStyle = wb.createCellStyle();
-                numberStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("0.00"));
+                reader.setLenient(true);
 
-                for (int row = 1; row < rowNumber; ++row)
+                try
                 {
-                    Cell cell = sheet.getRow(row).getCell(column);
-                    cell.setCellStyle(numberStyle);
-
-                    String value = cell.getStringCellValue();
-
-                    if (StringUtils.isNotBlank(value))
-                    {
-                        cell.setCellValue(Double.parseDouble(value));
-                    }
+                    return processJson(reader);
+                }
+                catch (IOException | IllegalStateException e)
+                {
+                    throw new IOException(String.format("Failed to parse survey: %s at: %s", survey, reader.getPath()), e);
                 }
             }
         }
     }
 
-    private void processJson(String json)
+    /**
+     * Streams the survey json into a row without building the json tree,
+     * each section is an array of objects whose fields become columns
+     */
+    private SurveyRow processJson(JsonReader reader) throws IOException
     {
-        JsonParser parser = new JsonParser();
-        JsonElement jsonTree = parser.parse(json);
-        JsonObject jsonObject = jsonTree.getAsJsonObject();
+        SurveyRow row = new SurveyRow();
 
-        int columnNumber = 0;
-        Row dataRow = sheet.createRow(rowNumber++);
+        reader.beginObject();
 
-        for (Map.Entry<String,JsonElement> entry : jsonObject.entrySet())
+        while (reader.hasNext())
         {
-            if (entry.getKey().equals("type") || entry.getKey().equals("version") || entry.getKey().equals("surveyid"))
+            String name = reader.nextName();
+
+            if (name.equals("type") || name.equals("version") || name.equals("surveyid"))
             {
+                reader.skipValue();
                 continue;
             }
 
-            JsonArray arrayElement = entry.getValue().getAsJsonArray();
-            columnNumber = extractSheetDetails(dataRow, headerRow, arrayElement, columnNumber);
+            extractSheetDetails(row, reader);
+        }
+
+        reader.endObject();
 
-            maxColumns = Math.max(maxColumns, columnNumber);
-            // Null out after first survey
+        if (reader.peek() != JsonToken.END_DOCUMENT)
+        {
+            throw new IllegalStateException("Did not consume the entire survey");
         }
 
-        headerRow = null;
+        return row;
     }
 
-    private int extractSheetDetails(Row row, Row headerRow, JsonArray element, int columnNumber)
+    private void extractSheetDetails(SurveyRow row, JsonReader reader) throws IOException
     {
-        int headerColumn = columnNumber;
-        int dataColumn = columnNumber;
+        reader.beginArray();
 
-        for (int i = 0; i < element.size(); ++i)
+        while (reader.hasNext())
         {
-            JsonObject entryObject = element.get(i).getAsJsonObject();
+            reader.beginObject();
 
-            for (Map.Entry<String,JsonElement> entry : entryObject.entrySet())
+            while (reader.hasNext())
             {
-                if (entry.getKey().equals("additionalinfo"))
+                String name = reader.nextName();
+
+                if (name.equals("additionalinfo"))
                 {
+                    reader.skipValue();
                     continue;
                 }
-                if (entry.getKey().equals("gps"))
-                {
-                    if (headerRow != null)
-                    {
-                        Cell cell = headerRow.createCell(headerColumn++);
-                        cell.setCellValue("LongWGS84");
-                        cell = headerRow.createCell(headerColumn++);
-                        cell.setCellValue("LatWGS84");
-                    }
 
-                    Pair latLong = splitLatLon(getStringValue(entry.getValue()));
-                    Cell cell = row.createCell(dataColumn++);
-                    cell.setCellValue(latLong.getKey());
-                    cell = row.createCell(dataColumn++);
-                    cell.setCellValue(latLong.getValue());
+                String path = reader.getPath();
+
+                if (name.equals("gps"))
+                {
+                    addLatLon(row, path, getStringValue(reader));
                 }
                 else
                 {
-                    if (headerRow != null)
-                    {
-                        Cell cell = headerRow.createCell(headerColumn++);
-                        cell.setCellValue(entry.getKey());
-                    }
-
-                    Cell cell = row.createCell(dataColumn++);
-                    cell.setCellValue(getStringValue(entry.getValue()));
+                    row.add(path, name, getStringValue(reader));
                 }
             }
+
+            reader.endObject();
         }
 
-        return dataColumn;
+        reader.endArray();
     }
 
-    private String getStringValue(JsonElement value)
+    /**
+     * Spools the next survey row with its values placed in their registered
+     * columns, called in survey order so columns are numbered by first use.
+     * Columns this survey doesn't have are left empty and the values are
+     * joined into their column types as they are spooled.
+     */
+    private void spoolRow(SurveyRow surveyRow) throws IOException
     {
-        if (value.isJsonNull())
+        int[] rowColumns = new int[surveyRow.size()];
+
+        for (int i = 0; i < surveyRow.size(); ++i)
         {
-            return "";
+            rowColumns[i] = columns.getColumn(surveyRow.getPath(i), surveyRow.getName(i));
         }
-        else if (value.isJsonPrimitive())
+
+        /**
+         * Always write a value so a survey without fields isn't read back
+         * as an empty line and dropped
+         */
+        String[] values = new String[Math.max(1, columns.size())];
+        Arrays.fill(values, "");
+
+        for (int i = 0; i < surveyRow.size(); ++i)
         {
-            return value.getAsString().trim();
+            values[rowColumns[i]] = surveyRow.getValue(i);
+            columns.addValue(rowColumns[i], surveyRow.getValue(i));
         }
 
-        throw new IllegalStateException("Unhandled data type while extracting values as String");
+        spool.printRecord((Object[]) values);
     }
 
-    private Pair splitLatLon(String latLon)
+    /**
+     * Writes the header and type of every registered column to the sink
+     * followed by the spooled rows, padding rows spooled before later
+     * columns were seen
+     */
+    private void writeSpool(File spoolFile) throws IOException
     {
-        String [] split = latLon.split(",");
-        return new Pair(split[0].trim(), split[1].trim());
+        int columnCount = columns.size();
+
+        LOGGER.info(String.format("Writing: [%d] columns to: [%s]", columnCount, outputFile));
+
+        sink.writeHeader(columns.getHeaders(), columns.getColumnTypes());
+
+        List<String> values = new ArrayList<>(columnCount);
+
+        try (CSVParser parser = new CSVParser(openSpoolReader(spoolFile), CSVFormat.DEFAULT))
+        {
+            for (CSVRecord record : parser)
+            {
+                values.clear();
+
+                for (int column = 0; column < columnCount; ++column)
+                {
+                    values.add(column < record.size() ? record.get(column) : "");
+                }
+
+                sink.writeRow(values);
+            }
+        }
     }
 
-    private String loadCompressedJson(File survey) throws IOException, CompressorException
+    private String getStringValue(JsonReader reader) throws IOException
     {
-        ZipFile zipFile = new ZipFile(survey);
-        ZipArchiveEntry surveyEntry = zipFile.getEntry("survey.json");
-        InputStream in = zipFile.getInputStream(surveyEntry);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        IOUtils.copy(in, out);
-        in.close();
-        return new String(out.toByteArray(), "UTF-8");
+        switch (reader.peek())
+        {
+            case NULL:
+                reader.nextNull();
+                return "";
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString().trim();
+            default:
+                throw new IllegalStateException("Unhandled data type while extracting values as String");
+        }
+    }
+
+    /**
+     * Adds the longitude and latitude columns from a "long, lat" value,
+     * splitting on the commas without a regular expression
+     */
+    private void addLatLon(SurveyRow row, String path, String latLon)
+    {
+        int first = latLon.indexOf(',');
+
+        if (first < 0)
+        {
+            throw new IllegalStateException("Invalid gps value: " + latLon);
+        }
+
+        int second = latLon.indexOf(',', first + 1);
+
+        row.add(path + ".LongWGS84", "LongWGS84", latLon.substring(0, first).trim());
+        row.add(path + ".LatWGS84", "LatWGS84", latLon.substring(first + 1, second < 0 ? latLon.length() : second).trim());
+    }
+
+    /**
+     * Walks the survey folder one folder at a time in name order, so the
+     * row order doesn't depend on the file system and only the folders
+     * being walked are held in memory
+     */
+    private static class SurveyIterator implements Iterator<File>
+    {
+        private final boolean recursive;
+        private final Deque<Iterator<File>> folders = new ArrayDeque<>();
+        private File next = null;
+
+        private SurveyIterator(File inputDir, boolean recursive)
+        {
+            this.recursive = recursive;
+            folders.push(list(inputDir));
+        }
+
+        private static Iterator<File> list(File dir)
+        {
+            File[] children = dir.listFiles();
+
+            if (children == null)
+            {
+                LOGGER.warn("Failed to list survey folder: " + dir);
+                return Collections.<File>emptyIterator();
+            }
+
+            Arrays.sort(children);
+            return Arrays.asList(children).iterator();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (next == null && !folders.isEmpty())
+            {
+                Iterator<File> folder = folders.peek();
+
+                if (!folder.hasNext())
+                {
+                    folders.pop();
+                    continue;
+                }
+
+                File child = folder.next();
+
+                if (child.isDirectory())
+                {
+                    if (recursive)
+                    {
+                        folders.push(list(child));
+                    }
+                }
+                else if (FilenameUtils.isExtension(child.getName(), "survey"))
+                {
+                    next = child;
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public File next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            File survey = next;
+            next = null;
+            return survey;
+        }
     }
 
     public static void main(String [] args)
@@ -233,10 +531,22 @@ public class RHISExporter
         boolean recursive = commands.hasOption("recursive");
         String outputFile = commands.getOptionValue("outputfile");
 
-        RHISExporter exporter = new RHISExporter(inputDir, recursive, outputFile);
-
         try
         {
+            int cores = Runtime.getRuntime().availableProcessors();
+
+            if (commands.hasOption("cores"))
+            {
+                cores = Integer.parseInt(commands.getOptionValue("cores"));
+
+                if (cores <= 0)
+                {
+                    throw new IllegalArgumentException("Invalid core count: " + cores);
+                }
+            }
+
+            RHISExporter exporter = new RHISExporter(inputDir, recursive, outputFile, cores);
+
             int count = exporter.export();
             LOGGER.info(String.format("Successfully exported: [%d] surveys", count));
 
@@ -265,7 +575,12 @@ public class RHISExporter
         options.addOption(Option.builder("outputfile")
               .argName("output file")
               .hasArg().required(true)
-              .desc("output Excel result file").build());
+              .desc("output result file, .csv, .xlsx or .xls").build());
+
+        options.addOption(Option.builder("cores")
+              .argName("cores")
+              .hasArg().required(false)
+              .desc("number of surveys to decompress and parse at once, defaults to the processor count").build());
 
         options.addOption(Option.builder("help").required(false)
               .desc("show help information").build());
@@ -0,0 +1,27 @@
+package com.rhis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Receives exported survey rows in order and writes them to an output file,
+ * which is complete once the sink is closed
+ */
+public interface RowSink extends Closeable
+{
+    /**
+     * Writes the header before any rows
+     *
+     * @param columnTypes the type of each column across every row
+     */
+    void writeHeader(List<String> headers, List<ColumnType> columnTypes) throws IOException;
+
+    void writeRow(List<String> values) throws IOException;
+
+    /**
+     * Releases the sink without writing out anything it still holds, used
+     * when an export fails and the output file is going to be deleted
+     */
+    void abort();
+}
@@ -0,0 +1,42 @@
+package com.rhis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The values of a parsed survey in field order, with the path and name of
+ * the field each value was read from
+ */
+public class SurveyRow
+{
+    private final List<String> paths = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    public void add(String path, String name, String value)
+    {
+        paths.add(path);
+        names.add(name);
+        values.add(value);
+    }
+
+    public int size()
+    {
+        return values.size();
+    }
+
+    public String getPath(int index)
+    {
+        return paths.get(index);
+    }
+
+    public String getName(int index)
+    {
+        return names.get(index);
+    }
+
+    public String getValue(int index)
+    {
+        return values.get(index);
+    }
+}
@@ -0,0 +1,174 @@
+package com.rhis;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes survey rows to an Excel workbook, .xls workbooks are held in memory
+ * while .xlsx workbooks are streamed keeping only a window of rows in memory.
+ *
+ * Columns typed as numbers are written as numbers sharing a single number
+ * style, every other column is written as text.
+ */
+public class WorkbookRowSink implements RowSink
+{
+    public static final String SHEET_NAME = "RHIS data";
+
+    /**
+     * Rows kept in memory by streaming workbooks before older rows are
+     * flushed to a temporary file
+     */
+    private static final int ROW_WINDOW = 100;
+
+    private final File outputFile;
+    private final Workbook wb;
+    private final Sheet sheet;
+    private final boolean streaming;
+    private final int maxRows;
+
+    private CellStyle numberStyle = null;
+    private int rowNumber = 0;
+    private List<ColumnType> columnTypes = Collections.emptyList();
+
+    public WorkbookRowSink(File outputFile)
+    {
+        this.outputFile = outputFile;
+        this.streaming = isXLSX(outputFile);
+
+        if (streaming)
+        {
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(ROW_WINDOW);
+            streamingWorkbook.setCompressTempFiles(true);
+            this.wb = streamingWorkbook;
+            this.maxRows = SpreadsheetVersion.EXCEL2007.getMaxRows();
+        }
+        else
+        {
+            this.wb = new HSSFWorkbook();
+            this.maxRows = SpreadsheetVersion.EXCEL97.getMaxRows();
+        }
+
+        this.sheet = wb.createSheet(SHEET_NAME);
+    }
+
+    public static boolean isXLSX(File file)
+    {
+        return file.getName().toLowerCase().endsWith(".xlsx");
+    }
+
+    public static boolean isDouble(String value)
+    {
+        return ColumnType.of(value) != ColumnType.TEXT;
+    }
+
+    @Override
+    public void writeHeader(List<String> headers, List<ColumnType> columnTypes) throws IOException
+    {
+        this.columnTypes = columnTypes;
+
+        Row headerRow = createRow();
+
+        for (int column = 0; column < headers.size(); ++column)
+        {
+            headerRow.createCell(column).setCellValue(headers.get(column));
+        }
+    }
+
+    @Override
+    public void writeRow(List<String> values) throws IOException
+    {
+        Row dataRow = createRow();
+
+        for (int column = 0; column < values.size(); ++column)
+        {
+            String value = values.get(column);
+            Cell cell = dataRow.createCell(column);
+
+            if (column < columnTypes.size() && columnTypes.get(column) == ColumnType.NUMBER)
+            {
+                cell.setCellStyle(getNumberStyle());
+
+                if (StringUtils.isNotBlank(value))
+                {
+                    cell.setCellValue(Double.parseDouble(value));
+                }
+            }
+            else
+            {
+                cell.setCellValue(value);
+            }
+        }
+    }
+
+    private Row createRow() throws IOException
+    {
+        if (rowNumber >= maxRows)
+        {
+            throw new IOException(String.format("Too many rows for: [%s] the limit is: [%d] rows, export to .xlsx or .csv instead",
+                outputFile.getName(), maxRows));
+        }
+
+        return sheet.createRow(rowNumber++);
+    }
+
+    private CellStyle getNumberStyle()
+    {
+        if (numberStyle == null)
+        {
+            numberStyle = wb.createCellStyle();
+            numberStyle.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+        }
+
+        return numberStyle;
+    }
+
+    /**
+     * Discards the workbook without writing it, removing the temporary files
+     * of streaming workbooks
+     */
+    @Override
+    public void abort()
+    {
+        if (streaming)
+        {
+            ((SXSSFWorkbook) wb).dispose();
+        }
+    }
+
+    /**
+     * Writes the workbook to the output file, removing the temporary files
+     * of streaming workbooks
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            try (OutputStream out = new FileOutputStream(outputFile))
+            {
+                wb.write(out);
+            }
+        }
+        finally
+        {
+            if (streaming)
+            {
+                ((SXSSFWorkbook) wb).dispose();
+            }
+        }
+    }
+}
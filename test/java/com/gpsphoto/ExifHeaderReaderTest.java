@@ -0,0 +1,122 @@
+package com.gpsphoto;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests reading capture times from EXIF headers
+ */
+public class ExifHeaderReaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesMetadataExtractor() throws Exception
+    {
+        for (ByteOrder order: new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN })
+        {
+            File file = createJpeg(exif("2019:06:11 06:40:27", order));
+
+            Date expected = ImageMetadataReader.readMetadata(file)
+                .getFirstDirectoryOfType(ExifIFD0Directory.class)
+                .getDate(ExifIFD0Directory.TAG_DATETIME, GPSPhoto.WALL_CLOCK_TIME_ZONE);
+
+            assertNotNull(expected);
+            assertEquals(expected, new ExifHeaderReader(file).readCaptureTime());
+
+            GPSPhoto photo = new GPSPhoto(file);
+            photo.loadMetaData();
+            assertEquals(expected, photo.getCaptureTime());
+            assertEquals("2019-06-11 06:40:27", photo.getFormattedCaptureTime());
+        }
+    }
+
+    @Test
+    public void testUnhandledFiles() throws Exception
+    {
+        assertNull(new ExifHeaderReader(createJpeg(null)).readCaptureTime());
+        assertNull(new ExifHeaderReader(createJpeg(exif("0000:00:00 00:00:00", ByteOrder.BIG_ENDIAN))).readCaptureTime());
+        assertNull(new ExifHeaderReader(createJpeg(exif("2019-06-11 06:40:27", ByteOrder.BIG_ENDIAN))).readCaptureTime());
+
+        File text = folder.newFile("text.jpg");
+        FileUtils.write(text, "not a jpeg");
+        assertNull(new ExifHeaderReader(text).readCaptureTime());
+    }
+
+    @Test(expected = GPSPhotoException.class)
+    public void testNoCaptureTime() throws Exception
+    {
+        new GPSPhoto(createJpeg(null)).loadMetaData();
+    }
+
+    /**
+     * Builds an APP1 segment holding IFD0 with a single date time tag
+     */
+    private static byte[] exif(String dateTime, ByteOrder order)
+    {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 12 + 4 + 20).order(order);
+        tiff.put((byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        tiff.put((byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0132);
+        tiff.putShort((short) 2);
+        tiff.putInt(20);
+        tiff.putInt(8 + 2 + 12 + 4);
+        tiff.putInt(0);
+        tiff.put(dateTime.getBytes(StandardCharsets.US_ASCII));
+        tiff.put((byte) 0);
+
+        ByteBuffer app1 = ByteBuffer.allocate(4 + 6 + tiff.capacity());
+        app1.putShort((short) 0xFFE1);
+        app1.putShort((short) (2 + 6 + tiff.capacity()));
+        app1.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        app1.put(tiff.array());
+
+        return app1.array();
+    }
+
+    /**
+     * Writes a small JPEG inserting the segment after the start of image marker
+     */
+    private File createJpeg(byte[] segment) throws IOException
+    {
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB), "jpg", image);
+        byte[] jpeg = image.toByteArray();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(jpeg, 0, 2);
+
+        if (segment != null)
+        {
+            out.write(segment);
+        }
+
+        out.write(jpeg, 2, jpeg.length - 2);
+
+        File file = folder.newFile();
+        FileUtils.writeByteArrayToFile(file, bytes.toByteArray());
+        return file;
+    }
+}
@@ -0,0 +1,37 @@
+package com.gpsphoto;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests fixed decimal formatting against String.format
+ */
+public class FixedDecimalFormatterTest
+{
+    @Test
+    public void testMatchesStringFormat()
+    {
+        Random random = new Random(42L);
+
+        for (int decimals: new int[] { 16, 6, 0 })
+        {
+            FixedDecimalFormatter formatter = new FixedDecimalFormatter(decimals);
+            String pattern = "%." + decimals + "f";
+
+            for (int i = 0; i < 100000; ++i)
+            {
+                double value = (random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(24) - 16);
+                assertEquals(String.format(pattern, value), formatter.format(value));
+            }
+
+            for (double value: new double[] { 0.0, -0.0, 0.5, 2.5, -2.5, 153.0, -27.4698, 6.0E-17, 99.99999999999999,
+                                              Double.NaN, Double.POSITIVE_INFINITY })
+            {
+                assertEquals(String.format(pattern, value), formatter.format(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests reading batch manifests and summarising failed projects
+ */
+public class GPSPhotoBatchTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadManifest() throws Exception
+    {
+        File manifestFile = folder.newFile("manifest.csv");
+        FileUtils.write(manifestFile,
+            "projectname,gpx,photos,outputdir,timephoto,phototime,thumbnails,recursive\n" +
+            "Mission 1,a.gpx;gpx folder,photos,out,photos/1.jpg,2019-06-11 06:40:27,yes,false\n" +
+            "\n" +
+            "Mission 2,b.gpx,photos2,out2,photos2/1.jpg,\"2019-06-12 06:40:27\",,\n", StandardCharsets.UTF_8);
+
+        GPSPhotoBatch batch = new GPSPhotoBatch(manifestFile, folder.newFile("summary.csv"), 1, 1, 1);
+        List<String[]> rows = batch.readManifest();
+
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] {
+            "-projectname", "Mission 1", "-gpx", "a.gpx", "-gpx", "gpx folder", "-photos", "photos",
+            "-outputdir", "out", "-timephoto", "photos/1.jpg", "-phototime", "2019-06-11 06:40:27", "-thumbnails" },
+            rows.get(0));
+        assertArrayEquals(new String[] {
+            "-projectname", "Mission 2", "-gpx", "b.gpx", "-photos", "photos2",
+            "-outputdir", "out2", "-timephoto", "photos2/1.jpg", "-phototime", "2019-06-12 06:40:27" },
+            rows.get(1));
+    }
+
+    @Test(expected = GPSPhotoException.class)
+    public void testUnknownManifestColumn() throws Exception
+    {
+        File manifestFile = folder.newFile("manifest.csv");
+        FileUtils.write(manifestFile, "projectname,mission\nMission 1,1\n", StandardCharsets.UTF_8);
+
+        new GPSPhotoBatch(manifestFile, folder.newFile("summary.csv"), 1, 1, 1).readManifest();
+    }
+
+    @Test
+    public void testFailedProjectsAreSummarised() throws Exception
+    {
+        File manifestFile = folder.newFile("manifest.csv");
+        File outputDir = new File(folder.getRoot(), "out");
+        FileUtils.write(manifestFile,
+            "projectname,gpx,photos,outputdir,timephoto,phototime\n" +
+            "Mission 1,missing.gpx,photos," + outputDir + ",photos/1.jpg,2019-06-11 06:40:27\n" +
+            "Mission 2,missing.gpx,photos," + outputDir + ",photos/1.jpg,\n", StandardCharsets.UTF_8);
+
+        File summaryFile = new File(folder.getRoot(), "summary.csv");
+        List<GPSPhotoBatch.ProjectResult> results = new GPSPhotoBatch(manifestFile, summaryFile, 2, 1, 1).process();
+
+        assertEquals(2, results.size());
+        assertEquals("Mission 1", results.get(0).getProjectName());
+        assertFalse(results.get(0).isSuccessful());
+        assertTrue(results.get(0).getError().contains("missing.gpx"));
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError().contains("phototime"));
+
+        List<String> lines = FileUtils.readLines(summaryFile, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("Row,ProjectName,OutputDir,Status,Georeferenced,Rejected,Seconds,Error", lines.get(0));
+        assertTrue(lines.get(1).startsWith("1,Mission 1," + outputDir + ",FAILED,0,0,"));
+        assertTrue(lines.get(2).startsWith("2,,,FAILED,0,0,"));
+    }
+}
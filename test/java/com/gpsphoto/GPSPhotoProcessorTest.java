@@ -0,0 +1,168 @@
+package com.gpsphoto;
+
+import com.vividsolutions.jts.geom.Point;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing and appending to shape files
+ */
+public class GPSPhotoProcessorTest
+{
+    private static final long START_TIME = 1560235227000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static GPSPhoto createPhoto(int index, boolean matched)
+    {
+        GPSPhoto photo = new GPSPhoto(new File(String.format("IMG_%04d.JPG", index)));
+        photo.setCaptureTime(new Date(START_TIME + index * 1000L));
+        photo.applyTimeDelta(0L);
+        photo.setLatitude(-25.0 - index * 0.001);
+        photo.setLongitude(120.0 + index * 0.001);
+        photo.setMatched(matched);
+        return photo;
+    }
+
+    private static List<SimpleFeature> readFeatures(File shapeFile) throws Exception
+    {
+        List<SimpleFeature> features = new ArrayList<>();
+        ShapefileDataStore dataStore = new ShapefileDataStore(shapeFile.toURI().toURL());
+
+        try
+        {
+            SimpleFeatureIterator iterator = dataStore.getFeatureSource().getFeatures().features();
+
+            try
+            {
+                while (iterator.hasNext())
+                {
+                    features.add(iterator.next());
+                }
+            }
+            finally
+            {
+                iterator.close();
+            }
+        }
+        finally
+        {
+            dataStore.dispose();
+        }
+
+        return features;
+    }
+
+    private static void assertFeature(GPSPhoto photo, SimpleFeature feature)
+    {
+        assertFeature(photo, feature, photo.getInputFile().getName());
+    }
+
+    private static void assertFeature(GPSPhoto photo, SimpleFeature feature, String image)
+    {
+        FastDateFormat fdf = FastDateFormat.getInstance("dd/MM/yyyy HH:mm:ss", GPSPhoto.WALL_CLOCK_TIME_ZONE);
+
+        assertEquals(photo.getInputFile().getName().replace(".JPG", ""), feature.getAttribute("Name"));
+
+        if (image != null)
+        {
+            assertEquals(image, feature.getAttribute("Image"));
+        }
+
+        assertEquals(fdf.format(photo.getOffsetTime()), feature.getAttribute("Date"));
+        assertEquals(photo.getLatitude(), ((Number) feature.getAttribute("Latitude")).doubleValue(), 1E-9);
+        assertEquals(photo.getLongitude(), ((Number) feature.getAttribute("Longitude")).doubleValue(), 1E-9);
+
+        Point point = (Point) feature.getDefaultGeometry();
+        assertEquals(photo.getLongitude(), point.getX(), 1E-9);
+        assertEquals(photo.getLatitude(), point.getY(), 1E-9);
+    }
+
+    @Test
+    public void testWriteAndAppendShapeFile() throws Exception
+    {
+        File shapeFile = new File(folder.getRoot(), "photos.shp");
+
+        List<GPSPhoto> photos = Arrays.asList(createPhoto(0, true), createPhoto(1, false), createPhoto(2, true));
+        GPSPhotoProcessor.writeShapeFile(shapeFile, photos, true, false);
+
+        for (String extension: Arrays.asList("shp", "shx", "dbf", "prj", "qix"))
+        {
+            assertTrue(extension, new File(folder.getRoot(), "photos." + extension).isFile());
+        }
+
+        /**
+         * Unmatched photos are left out
+         */
+        List<SimpleFeature> features = readFeatures(shapeFile);
+        assertEquals(2, features.size());
+        assertFeature(photos.get(0), features.get(0));
+        assertFeature(photos.get(2), features.get(1));
+
+        List<GPSPhoto> newPhotos = Arrays.asList(createPhoto(3, true), createPhoto(4, true));
+        GPSPhotoProcessor.writeShapeFile(shapeFile, newPhotos, true, true);
+
+        /**
+         * Appended features follow the existing ones and the point records
+         * of 28 bytes each follow the 100 byte header
+         */
+        features = readFeatures(shapeFile);
+        assertEquals(4, features.size());
+        assertFeature(photos.get(0), features.get(0));
+        assertFeature(photos.get(2), features.get(1));
+        assertFeature(newPhotos.get(0), features.get(2));
+        assertFeature(newPhotos.get(1), features.get(3));
+
+        assertEquals(100L + 4 * 28L, shapeFile.length());
+    }
+
+    @Test
+    public void testAppendWithDifferentThumbnails() throws Exception
+    {
+        File shapeFile = new File(folder.getRoot(), "photos.shp");
+
+        /**
+         * Written without thumbnails the schema has no image attribute
+         */
+        List<GPSPhoto> photos = Collections.singletonList(createPhoto(0, true));
+        GPSPhotoProcessor.writeShapeFile(shapeFile, photos, false, false);
+
+        List<GPSPhoto> newPhotos = Collections.singletonList(createPhoto(1, true));
+        GPSPhotoProcessor.writeShapeFile(shapeFile, newPhotos, true, true);
+
+        List<SimpleFeature> features = readFeatures(shapeFile);
+        assertEquals(2, features.size());
+        assertNull(features.get(0).getFeatureType().getDescriptor("Image"));
+        assertFeature(photos.get(0), features.get(0), null);
+        assertFeature(newPhotos.get(0), features.get(1), null);
+
+        /**
+         * Written with thumbnails the image attribute is kept for appended
+         * photos without them
+         */
+        File imageShapeFile = new File(folder.getRoot(), "images.shp");
+        GPSPhotoProcessor.writeShapeFile(imageShapeFile, photos, true, false);
+        GPSPhotoProcessor.writeShapeFile(imageShapeFile, newPhotos, false, true);
+
+        features = readFeatures(imageShapeFile);
+        assertEquals(2, features.size());
+        assertFeature(photos.get(0), features.get(0));
+        assertNotNull(features.get(1).getFeatureType().getDescriptor("Image"));
+        assertFeature(newPhotos.get(0), features.get(1), null);
+    }
+}
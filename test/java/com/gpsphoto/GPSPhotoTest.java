@@ -53,4 +53,71 @@ public class GPSPhotoTest
         LOGGER.info("Tests complete");
 
     }
+
+    @Test
+    public void testPositionInterpolation() throws GPSPhotoException
+    {
+        long start = 1500000000000L;
+
+        List<GPSPosition> positions = new ArrayList<>();
+        positions.add(new GPSPosition(-25.0, 120.0, new Date(start)));
+        positions.add(new GPSPosition(-25.5, 120.5, new Date(start + 1000L)));
+        positions.add(new GPSPosition(-26.0, 121.0, new Date(start + 1000L)));
+        positions.add(new GPSPosition(-26.5, 121.5, new Date(start + 1500L)));
+        positions.add(new GPSPosition(-27.0, 122.0, new Date(start + 4500L)));
+        positions.add(new GPSPosition(-27.5, 122.5, new Date(start + 5000L)));
+
+        /**
+         * Halfway between the first two positions
+         */
+        GPSPhoto photo = new GPSPhoto(new File("some.jpg"));
+        photo.setCaptureTime(new Date(start + 500L));
+        photo.applyTimeDelta(0L);
+        assertTrue(photo.computePosition(positions, 2000L));
+        assertEquals(-25.25, photo.getLatitude(), 1E-12);
+        assertEquals(120.25, photo.getLongitude(), 1E-12);
+
+        /**
+         * Exactly on a duplicated time uses the segment ending at the first duplicate
+         */
+        photo = new GPSPhoto(new File("some.jpg"));
+        photo.setCaptureTime(new Date(start + 1000L));
+        photo.applyTimeDelta(0L);
+        assertTrue(photo.computePosition(positions, 2000L));
+        assertEquals(-25.5, photo.getLatitude(), 0.0);
+        assertEquals(120.5, photo.getLongitude(), 0.0);
+
+        /**
+         * Exactly on a duplicated time with the previous segment out of tolerance
+         * uses the segment starting at the last duplicate
+         */
+        photo = new GPSPhoto(new File("some.jpg"));
+        photo.setCaptureTime(new Date(start + 1000L));
+        photo.applyTimeDelta(0L);
+        assertTrue(photo.computePosition(positions, 999L));
+        assertEquals(-26.0, photo.getLatitude(), 0.0);
+        assertEquals(121.0, photo.getLongitude(), 0.0);
+
+        /**
+         * Inside the gap but too far from both ends
+         */
+        photo = new GPSPhoto(new File("some.jpg"));
+        photo.setCaptureTime(new Date(start + 3000L));
+        photo.applyTimeDelta(0L);
+        assertFalse(photo.computePosition(positions, 1000L));
+
+        /**
+         * Last position and beyond the end of the track
+         */
+        photo = new GPSPhoto(new File("some.jpg"));
+        photo.setCaptureTime(new Date(start + 5000L));
+        photo.applyTimeDelta(0L);
+        assertTrue(photo.computePosition(positions, 2000L));
+        assertEquals(-27.5, photo.getLatitude(), 0.0);
+
+        photo = new GPSPhoto(new File("some.jpg"));
+        photo.setCaptureTime(new Date(start + 5001L));
+        photo.applyTimeDelta(0L);
+        assertFalse(photo.computePosition(positions, 2000L));
+    }
 }
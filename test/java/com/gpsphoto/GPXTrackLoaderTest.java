@@ -0,0 +1,82 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests loading and merging tracks from several GPX files
+ */
+public class GPXTrackLoaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String gpx(String... trackPoints)
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buf.append("<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+        buf.append("<trk><trkseg>\n");
+
+        for (String trackPoint: trackPoints)
+        {
+            buf.append(trackPoint).append('\n');
+        }
+
+        buf.append("</trkseg></trk>\n");
+        buf.append("</gpx>\n");
+        return buf.toString();
+    }
+
+    @Test
+    public void testLoadFolder() throws Exception
+    {
+        File gpxDir = folder.newFolder("gpx");
+        FileUtils.write(new File(gpxDir, "a.gpx"), gpx(
+            "<trkpt lat=\"-25.1\" lon=\"120.1\"><time>2019-06-11T06:40:27Z</time></trkpt>",
+            "<trkpt lat=\"-25.3\" lon=\"120.3\"><time>2019-06-11T06:40:29Z</time></trkpt>"));
+        FileUtils.write(new File(gpxDir, "b.GPX"), gpx(
+            "<trkpt lat=\"-25.2\" lon=\"120.2\"><time>2019-06-11T06:40:28Z</time></trkpt>",
+            "<trkpt lat=\"-25.4\" lon=\"120.4\"><time>2019-06-11T06:40:29Z</time><hdop>0.8</hdop></trkpt>",
+            "<trkpt lat=\"-25.5\" lon=\"120.5\"><time>2019-06-11T06:40:30Z</time></trkpt>"));
+        FileUtils.write(new File(gpxDir, "notes.txt"), "not a track");
+
+        List<File> gpxFiles = GPXTrackLoader.findGPXFiles(Collections.singletonList(gpxDir.getPath()));
+        assertEquals(Arrays.asList(new File(gpxDir, "a.gpx"), new File(gpxDir, "b.GPX")), gpxFiles);
+
+        File outputDir = folder.newFolder("output");
+        TrackIndex track = new GPXTrackLoader(outputDir, 2).load(gpxFiles);
+
+        double[] expectedLatitudes = { -25.1, -25.2, -25.4, -25.5 };
+        assertEquals(expectedLatitudes.length, track.size());
+
+        for (int i = 0; i < track.size(); ++i)
+        {
+            assertEquals(1560235227000L + i * 1000L, track.getTime(i));
+            assertEquals(expectedLatitudes[i], track.getLatitude(i), 0.0);
+        }
+
+        /**
+         * The second load comes from the track caches
+         */
+        assertEquals(2, outputDir.listFiles().length);
+        TrackIndex cached = new GPXTrackLoader(outputDir, 2).load(gpxFiles);
+        assertArrayEquals(track.getTimes(), cached.getTimes());
+        assertArrayEquals(track.getLatitudes(), cached.getLatitudes(), 0.0);
+    }
+
+    @Test(expected = GPSPhotoException.class)
+    public void testMissingGPXFile() throws Exception
+    {
+        GPXTrackLoader.findGPXFiles(Collections.singletonList(new File(folder.getRoot(), "missing.gpx").getPath()));
+    }
+}
@@ -0,0 +1,72 @@
+package com.gpsphoto;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing kml and kmz files
+ */
+public class KMLWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKML() throws Exception
+    {
+        File file = folder.newFile("photos.kml");
+        write(file);
+
+        try (InputStream in = new FileInputStream(file))
+        {
+            checkDocument(in);
+        }
+    }
+
+    @Test
+    public void testKMZ() throws Exception
+    {
+        File file = folder.newFile("photos.KMZ");
+        write(file);
+
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(file)))
+        {
+            ZipEntry entry = in.getNextEntry();
+            assertEquals("doc.kml", entry.getName());
+            checkDocument(in);
+        }
+    }
+
+    private static void write(File file) throws Exception
+    {
+        try (KMLWriter writer = new KMLWriter(file, "Mission & test"))
+        {
+            writer.writePlacemark("IMG_0001", "IMG_0001.JPG", -27.4698, 153.0251);
+            writer.writePlacemark("IMG_0002", "IMG_0002.JPG", -27.5, 153.125);
+        }
+    }
+
+    private static void checkDocument(InputStream in) throws Exception
+    {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+
+        assertEquals("Mission & test", document.getElementsByTagName("name").item(0).getTextContent());
+
+        NodeList coordinates = document.getElementsByTagName("coordinates");
+        assertEquals(2, coordinates.getLength());
+        assertEquals("153.0251000000000000,-27.4698000000000000,0", coordinates.item(0).getTextContent());
+        assertEquals("153.1250000000000000,-27.5000000000000000,0", coordinates.item(1).getTextContent());
+    }
+}
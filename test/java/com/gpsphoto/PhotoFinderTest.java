@@ -0,0 +1,84 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests finding photos by extension and glob
+ */
+public class PhotoFinderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createPhotos() throws Exception
+    {
+        File photosDir = folder.newFolder("photos");
+
+        for (String path: Arrays.asList("IMG_0001.JPG", "IMG_0002.jpeg", "IMG_0003.Jpg", "notes.txt", "jpg",
+            "day1/IMG_0004.jpg", "day1/preview/IMG_0005.jpg", "rejects/IMG_0006.jpg", "output/IMG_0001.JPG"))
+        {
+            FileUtils.write(new File(photosDir, path), path);
+        }
+
+        return photosDir;
+    }
+
+    private static List<String> names(List<File> files)
+    {
+        String[] names = new String[files.size()];
+
+        for (int i = 0; i < names.length; ++i)
+        {
+            names[i] = files.get(i).getName();
+        }
+
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    @Test
+    public void testFindIgnoresExtensionCase() throws Exception
+    {
+        File photosDir = createPhotos();
+
+        PhotoFinder finder = new PhotoFinder(photosDir, false);
+        assertEquals(Arrays.asList("IMG_0001.JPG", "IMG_0002.jpeg", "IMG_0003.Jpg"), names(finder.findAll(2)));
+
+        finder = new PhotoFinder(photosDir, true);
+        finder.setExcludeDir(new File(photosDir, "output"));
+        assertEquals(Arrays.asList("IMG_0001.JPG", "IMG_0002.jpeg", "IMG_0003.Jpg", "IMG_0004.jpg", "IMG_0005.jpg", "IMG_0006.jpg"),
+            names(finder.findAll(2)));
+    }
+
+    @Test
+    public void testIncludeAndExcludeGlobs() throws Exception
+    {
+        File photosDir = createPhotos();
+
+        PhotoFinder finder = new PhotoFinder(photosDir, true, Collections.singletonList("JPG"),
+            Arrays.asList("IMG_000[1-5].*"), Arrays.asList("rejects", "**/preview", "output"));
+
+        assertEquals(Arrays.asList("IMG_0001.JPG", "IMG_0003.Jpg", "IMG_0004.jpg"), names(finder.findAll(4)));
+
+        finder = new PhotoFinder(photosDir, true, PhotoFinder.DEFAULT_EXTENSIONS,
+            Arrays.asList("day1/**"), Collections.<String>emptyList());
+
+        assertEquals(Arrays.asList("IMG_0004.jpg", "IMG_0005.jpg"), names(finder.findAll(4)));
+    }
+
+    @Test(expected = GPSPhotoException.class)
+    public void testMissingFolder() throws Exception
+    {
+        new PhotoFinder(new File(folder.getRoot(), "missing"), true).findAll(1);
+    }
+}
@@ -0,0 +1,219 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests photos are reported once they have settled
+ */
+public class PhotoFolderWatcherTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReportsSettledPhotos() throws Exception
+    {
+        File photosDir = folder.newFolder("photos");
+        File outputDir = new File(photosDir, "output");
+        outputDir.mkdirs();
+
+        PhotoFinder finder = new PhotoFinder(photosDir, true);
+        finder.setExcludeDir(outputDir);
+
+        final PhotoFolderWatcher watcher = new PhotoFolderWatcher(finder, 200L);
+        final List<File> reported = Collections.synchronizedList(new ArrayList<File>());
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    watcher.run(new PhotoFolderWatcher.PhotoListener()
+                    {
+                        @Override
+                        public void photosReady(List<File> photoFiles)
+                        {
+                            for (File photoFile: photoFiles)
+                            {
+                                reported.add(photoFile);
+                                latch.countDown();
+                            }
+                        }
+                    });
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        thread.start();
+
+        try
+        {
+            FileUtils.write(new File(photosDir, "notes.txt"), "not a photo");
+            FileUtils.write(new File(outputDir, "thumbnail.jpg"), "thumbnail");
+            FileUtils.write(new File(photosDir, "IMG_0001.JPG"), "photo one");
+
+            File subDir = new File(photosDir, "day2");
+            subDir.mkdirs();
+            FileUtils.write(new File(subDir, "IMG_0002.jpeg"), "photo two");
+
+            assertTrue(latch.await(10L, TimeUnit.SECONDS));
+            Thread.sleep(500L);
+        }
+        finally
+        {
+            watcher.close();
+            thread.join(5000L);
+        }
+
+        assertFalse(thread.isAlive());
+        assertEquals(2, reported.size());
+        assertTrue(reported.contains(new File(photosDir, "IMG_0001.JPG").getAbsoluteFile()));
+        assertTrue(reported.contains(new File(photosDir, "day2/IMG_0002.jpeg").getAbsoluteFile()));
+    }
+
+    @Test
+    public void testAddedPhotosWaitForQuietPeriod() throws Exception
+    {
+        File photosDir = folder.newFolder("photos");
+        File photo = new File(photosDir, "IMG_0001.JPG");
+        FileUtils.write(photo, "photo one");
+
+        try (PhotoFolderWatcher watcher = new PhotoFolderWatcher(new PhotoFinder(photosDir, false), 2000L))
+        {
+            long now = System.currentTimeMillis();
+            watcher.addPhotos(Collections.singletonList(photo));
+
+            assertTrue(watcher.getSettledPhotos(now).isEmpty());
+            assertEquals(Collections.singletonList(photo), watcher.getSettledPhotos(now + 5000L));
+        }
+    }
+
+    @Test
+    public void testCloseWhileRunning() throws Exception
+    {
+        File photosDir = folder.newFolder("photos");
+        final PhotoFolderWatcher watcher = new PhotoFolderWatcher(new PhotoFinder(photosDir, false), 200L);
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    watcher.run(new PhotoFolderWatcher.PhotoListener()
+                    {
+                        @Override
+                        public void photosReady(List<File> photoFiles)
+                        {
+                        }
+                    });
+                }
+                catch (Exception e)
+                {
+                    failures.add(e);
+                }
+            }
+        });
+
+        thread.start();
+
+        /**
+         * Close while photos are still arriving so events may be mid drain
+         */
+        for (int i = 0; i < 50; ++i)
+        {
+            FileUtils.write(new File(photosDir, String.format("IMG_%04d.JPG", i)), "photo");
+        }
+
+        watcher.close();
+        thread.join(5000L);
+
+        assertFalse(thread.isAlive());
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    @Test
+    public void testFolderDeletedBeforeRegistered() throws Exception
+    {
+        File photosDir = folder.newFolder("photos");
+        final PhotoFolderWatcher watcher = new PhotoFolderWatcher(new PhotoFinder(photosDir, true), 200L);
+        final List<File> reported = Collections.synchronizedList(new ArrayList<File>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    watcher.run(new PhotoFolderWatcher.PhotoListener()
+                    {
+                        @Override
+                        public void photosReady(List<File> photoFiles)
+                        {
+                            reported.addAll(photoFiles);
+                            latch.countDown();
+                        }
+                    });
+                }
+                catch (Exception e)
+                {
+                    failures.add(e);
+                }
+            }
+        });
+
+        thread.start();
+
+        try
+        {
+            /**
+             * Delete new folders while the watcher may still be walking them
+             */
+            for (int i = 0; i < 50; ++i)
+            {
+                File subDir = new File(photosDir, "day" + i);
+                File nestedDir = new File(subDir, "a/b/c");
+                nestedDir.mkdirs();
+                FileUtils.write(new File(nestedDir, "IMG_0001.JPG"), "photo");
+                FileUtils.deleteDirectory(subDir);
+            }
+
+            FileUtils.write(new File(photosDir, "IMG_0002.JPG"), "photo two");
+
+            assertTrue(latch.await(10L, TimeUnit.SECONDS));
+            assertTrue(thread.isAlive());
+        }
+        finally
+        {
+            watcher.close();
+            thread.join(5000L);
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(reported.contains(new File(photosDir, "IMG_0002.JPG").getAbsoluteFile()));
+    }
+}
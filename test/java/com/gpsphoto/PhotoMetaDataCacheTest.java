@@ -0,0 +1,95 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests saving and reusing cached photo meta data
+ */
+public class PhotoMetaDataCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReuseUnchangedPhotos() throws Exception
+    {
+        File cacheFile = new File(folder.getRoot(), PhotoMetaDataCache.CACHE_FILE_NAME);
+        File unchanged = folder.newFile("unchanged, photo.jpg");
+        File changed = folder.newFile("changed.jpg");
+        FileUtils.write(unchanged, "photo one");
+        FileUtils.write(changed, "photo two");
+
+        PhotoMetaDataCache cache = new PhotoMetaDataCache(cacheFile);
+        cache.load();
+        assertNull(cache.getCaptureTime(unchanged));
+
+        cache.putCaptureTime(unchanged, new Date(1560235227000L));
+        cache.putCaptureTime(changed, new Date(1560235232000L));
+        cache.save();
+
+        FileUtils.write(changed, "photo two edited");
+
+        cache = new PhotoMetaDataCache(cacheFile);
+        cache.load();
+        assertEquals(new Date(1560235227000L), cache.getCaptureTime(unchanged));
+        assertNull(cache.getCaptureTime(changed));
+        assertEquals(1, cache.getHits());
+
+        /**
+         * Only photos seen in the last run are kept
+         */
+        cache.save();
+        cache = new PhotoMetaDataCache(cacheFile);
+        cache.load();
+        assertEquals(new Date(1560235227000L), cache.getCaptureTime(unchanged));
+        FileUtils.write(changed, "photo two");
+        assertNull(cache.getCaptureTime(changed));
+    }
+
+    @Test
+    public void testReuseCurrentThumbnails() throws Exception
+    {
+        File cacheFile = new File(folder.getRoot(), PhotoMetaDataCache.CACHE_FILE_NAME);
+        File photo = folder.newFile("photo.jpg");
+        File thumbnail = folder.newFile("thumbnail.jpg");
+        FileUtils.write(photo, "photo");
+        FileUtils.write(thumbnail, "thumbnail");
+
+        PhotoMetaDataCache cache = new PhotoMetaDataCache(cacheFile);
+        cache.load();
+        cache.putCaptureTime(photo, new Date(1560235227000L));
+        assertFalse(cache.isThumbnailCurrent(photo, thumbnail, "512x512@0.9"));
+        cache.putThumbnail(photo, thumbnail, "512x512@0.9");
+        cache.save();
+
+        cache = new PhotoMetaDataCache(cacheFile);
+        cache.load();
+        assertNotNull(cache.getCaptureTime(photo));
+        assertTrue(cache.isThumbnailCurrent(photo, thumbnail, "512x512@0.9"));
+        assertFalse(cache.isThumbnailCurrent(photo, thumbnail, "256x256@0.9"));
+        assertEquals(1, cache.getThumbnailHits());
+
+        FileUtils.write(thumbnail, "edited thumbnail");
+        assertFalse(cache.isThumbnailCurrent(photo, thumbnail, "512x512@0.9"));
+    }
+
+    @Test
+    public void testIgnoreUnreadableCache() throws Exception
+    {
+        File cacheFile = new File(folder.getRoot(), PhotoMetaDataCache.CACHE_FILE_NAME);
+        File photo = folder.newFile("photo.jpg");
+        FileUtils.write(cacheFile, "Path,Size,Modified,CaptureTime\n" + photo.getAbsolutePath() + ",x,y,z\n");
+
+        PhotoMetaDataCache cache = new PhotoMetaDataCache(cacheFile);
+        cache.load();
+        assertNull(cache.getCaptureTime(photo));
+    }
+}
@@ -0,0 +1,151 @@
+package com.gpsphoto;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests stage statistics percentiles, the metrics file and the stage MXBeans
+ */
+public class ProcessingMetricsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLatencyPercentiles()
+    {
+        StageStatistics stage = new StageStatistics("metadata");
+
+        assertEquals(0.0, stage.getLatencyP50Millis(), 0.0);
+
+        for (int i = 100; i >= 1; --i)
+        {
+            stage.photoProcessed(i * 1000000L, 10L);
+        }
+
+        assertEquals(100, stage.getProcessed());
+        assertEquals(1000L, stage.getBytesRead());
+
+        /**
+         * Percentiles are within 1% from the histogram, the maximum is exact
+         */
+        assertEquals(50.0, stage.getLatencyP50Millis(), 0.5);
+        assertEquals(90.0, stage.getLatencyP90Millis(), 0.9);
+        assertEquals(99.0, stage.getLatencyP99Millis(), 0.99);
+        assertEquals(100.0, stage.getLatencyMaxMillis(), 0.0);
+    }
+
+    @Test
+    public void testLatencyBuckets()
+    {
+        int lastBucket = -1;
+
+        for (long latency = 0L; latency < 1L << 40; latency = latency * 3 / 2 + 1)
+        {
+            int bucket = StageStatistics.getBucket(latency);
+            assertTrue(bucket >= lastBucket);
+            assertEquals(latency, StageStatistics.getBucketMiddle(bucket), latency * 0.01);
+            lastBucket = bucket;
+        }
+
+        assertEquals(StageStatistics.getBucket(Long.MAX_VALUE), StageStatistics.getBucket(1L << 50));
+
+        StageStatistics stage = new StageStatistics("matching");
+
+        for (int i = 0; i < 1000000; ++i)
+        {
+            stage.photoProcessed(2000000L, 0L);
+        }
+
+        stage.photoProcessed(TimeUnit.SECONDS.toNanos(30L), 0L);
+
+        assertEquals(1000001, stage.getLatencyCount());
+        assertEquals(2.0, stage.getLatencyP99Millis(), 0.02);
+        assertEquals(30000.0, stage.getLatencyMaxMillis(), 0.0);
+    }
+
+    @Test
+    public void testWriteMetrics() throws Exception
+    {
+        ProcessingMetrics metrics = new ProcessingMetrics("test");
+
+        StageStatistics gpx = metrics.createStage("gpx");
+        gpx.itemsProcessed(400, 5000000L, 34089L);
+        gpx.complete();
+
+        StageStatistics kml = metrics.createStage("kml");
+        kml.itemsProcessed(40);
+        kml.addBytesWritten(2048L);
+        kml.complete();
+
+        metrics.setCount("georeferenced", 40);
+        metrics.complete();
+
+        File metricsFile = new File(folder.getRoot(), ProcessingMetrics.METRICS_FILE_NAME);
+        metrics.write(metricsFile);
+
+        JsonObject json = new JsonParser().parse(FileUtils.readFileToString(metricsFile, StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals("test", json.get("project").getAsString());
+        assertEquals(40, json.get("georeferenced").getAsInt());
+
+        JsonArray stages = json.getAsJsonArray("stages");
+        assertEquals(2, stages.size());
+
+        JsonObject gpxJson = stages.get(0).getAsJsonObject();
+        assertEquals("gpx", gpxJson.get("name").getAsString());
+        assertEquals(400, gpxJson.get("items").getAsInt());
+        assertEquals(34089L, gpxJson.get("bytesRead").getAsLong());
+        assertEquals(5.0, gpxJson.getAsJsonObject("latencyMillis").get("p50").getAsDouble(), 0.0);
+
+        JsonObject kmlJson = stages.get(1).getAsJsonObject();
+        assertEquals("kml", kmlJson.get("name").getAsString());
+        assertEquals(2048L, kmlJson.get("bytesWritten").getAsLong());
+        assertFalse(kmlJson.has("latencyMillis"));
+    }
+
+    @Test
+    public void testRegisterMBeans() throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.gpsphoto:type=Stage,project=\"jmx test\",stage=\"matching\"");
+
+        ProcessingMetrics metrics = new ProcessingMetrics("jmx test");
+        metrics.registerMBeans();
+
+        StageStatistics stage = metrics.createStage("matching");
+        stage.photoProcessed(2000000L, 0L);
+
+        try
+        {
+            assertTrue(server.isRegistered(name));
+            assertEquals(1, server.getAttribute(name, "Processed"));
+            assertEquals(2.0, (Double) server.getAttribute(name, "LatencyP50Millis"), 0.0);
+
+            /**
+             * Running a stage again replaces its bean
+             */
+            metrics.createStage("matching");
+            assertEquals(0, server.getAttribute(name, "Processed"));
+        }
+        finally
+        {
+            metrics.unregisterMBeans();
+        }
+
+        assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,157 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing thumbnails from embedded EXIF thumbnails and subsampled images
+ */
+public class ThumbnailWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ThumbnailWriter writer = new ThumbnailWriter(512, 512, 0.9);
+
+    @Test
+    public void testEmbeddedThumbnail() throws Exception
+    {
+        File input = createJpeg(1200, 800, Color.RED, 1, jpeg(600, 400, Color.BLUE));
+
+        ExifHeaderReader exif = new ExifHeaderReader(input);
+        assertNotNull(exif.readThumbnail());
+        assertEquals(1, exif.readOrientation());
+
+        BufferedImage thumbnail = write(input);
+        assertEquals(512, thumbnail.getWidth());
+        assertEquals(341, thumbnail.getHeight());
+        assertTrue(isBlue(thumbnail.getRGB(256, 170)));
+    }
+
+    @Test
+    public void testSmallEmbeddedThumbnail() throws Exception
+    {
+        BufferedImage thumbnail = write(createJpeg(1200, 800, Color.RED, 1, jpeg(160, 107, Color.BLUE)));
+        assertEquals(512, thumbnail.getWidth());
+        assertEquals(341, thumbnail.getHeight());
+        assertFalse(isBlue(thumbnail.getRGB(256, 170)));
+    }
+
+    @Test
+    public void testSubsampledOrientation() throws Exception
+    {
+        File input = createJpeg(3000, 2000, Color.RED, 6, null);
+        assertNull(new ExifHeaderReader(input).readThumbnail());
+        assertEquals(6, new ExifHeaderReader(input).readOrientation());
+
+        BufferedImage thumbnail = write(input);
+        assertEquals(341, thumbnail.getWidth());
+        assertEquals(512, thumbnail.getHeight());
+    }
+
+    @Test
+    public void testNoExif() throws Exception
+    {
+        File input = folder.newFile("plain.jpg");
+        FileUtils.writeByteArrayToFile(input, jpeg(640, 480, Color.RED));
+
+        BufferedImage thumbnail = write(input);
+        assertEquals(512, thumbnail.getWidth());
+        assertEquals(384, thumbnail.getHeight());
+    }
+
+    private BufferedImage write(File input) throws IOException
+    {
+        File output = new File(folder.getRoot(), "thumbnail_" + input.getName());
+        writer.write(input, output);
+        return ImageIO.read(output);
+    }
+
+    private static boolean isBlue(int rgb)
+    {
+        Color color = new Color(rgb);
+        return color.getBlue() > 200 && color.getRed() < 50;
+    }
+
+    private static byte[] jpeg(int width, int height, Color color) throws IOException
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a JPEG with an EXIF segment after the JFIF segment holding the
+     * orientation in IFD0 and an optional thumbnail in IFD1
+     */
+    private File createJpeg(int width, int height, Color color, int orientation, byte[] thumbnail) throws IOException
+    {
+        int ifd1Offset = 8 + 2 + 12 + 4;
+        int thumbnailOffset = ifd1Offset + 2 + 2 * 12 + 4;
+
+        ByteBuffer tiff = ByteBuffer.allocate(thumbnailOffset + (thumbnail == null ? 0 : thumbnail.length));
+        tiff.put("MM".getBytes(StandardCharsets.US_ASCII));
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112);
+        tiff.putShort((short) 3);
+        tiff.putInt(1);
+        tiff.putShort((short) orientation);
+        tiff.putShort((short) 0);
+        tiff.putInt(thumbnail == null ? 0 : ifd1Offset);
+
+        if (thumbnail != null)
+        {
+            tiff.putShort((short) 2);
+            tiff.putShort((short) 0x0201);
+            tiff.putShort((short) 4);
+            tiff.putInt(1);
+            tiff.putInt(thumbnailOffset);
+            tiff.putShort((short) 0x0202);
+            tiff.putShort((short) 4);
+            tiff.putInt(1);
+            tiff.putInt(thumbnail.length);
+            tiff.putInt(0);
+            tiff.put(thumbnail);
+        }
+
+        byte[] image = jpeg(width, height, color);
+        int app0End = 4 + ((image[4] & 0xFF) << 8 | (image[5] & 0xFF));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(image, 0, app0End);
+        bytes.write(0xFF);
+        bytes.write(0xE1);
+        int length = 2 + 6 + tiff.position();
+        bytes.write(length >> 8);
+        bytes.write(length & 0xFF);
+        bytes.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        bytes.write(tiff.array(), 0, tiff.position());
+        bytes.write(image, app0End, image.length - app0End);
+
+        File file = File.createTempFile("photo", ".jpg", folder.getRoot());
+        FileUtils.writeByteArrayToFile(file, bytes.toByteArray());
+        return file;
+    }
+}
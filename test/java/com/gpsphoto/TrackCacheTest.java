@@ -0,0 +1,97 @@
+package com.gpsphoto;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing and reading cached tracks
+ */
+public class TrackCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        TrackIndex.Builder builder = new TrackIndex.Builder();
+        builder.add(-37.1, 145.1, 100.5, 1.2, 3000L);
+        builder.add(-37.0, 145.0, 99.5, Double.NaN, 1000L);
+        builder.add(-37.2, 145.2, 101.5, 0.9, 5000L);
+        TrackIndex track = builder.build();
+
+        TrackCache cache = new TrackCache(folder.newFile("track.gpx" + TrackCache.CACHE_FILE_EXTENSION));
+        cache.write(track, 1234L, 5678L);
+
+        TrackIndex cached = cache.read(1234L, 5678L);
+        assertNotNull(cached);
+        assertEquals(3, cached.size());
+        assertTrue(cached.hasElevations());
+        assertTrue(cached.hasHdops());
+        assertArrayEquals(track.getTimes(), cached.getTimes());
+        assertArrayEquals(track.getLatitudes(), cached.getLatitudes(), 0.0);
+        assertArrayEquals(track.getLongitudes(), cached.getLongitudes(), 0.0);
+        assertArrayEquals(track.getElevations(), cached.getElevations(), 0.0);
+        assertArrayEquals(track.getHdops(), cached.getHdops(), 0.0);
+
+        /**
+         * Tracks without elevations or HDOP are stored without them
+         */
+        builder = new TrackIndex.Builder();
+        builder.add(-37.0, 145.0, 1000L);
+        builder.add(-37.1, 145.1, 2000L);
+        cache.write(builder.build(), 1234L, 5678L);
+
+        cached = cache.read(1234L, 5678L);
+        assertEquals(2, cached.size());
+        assertFalse(cached.hasElevations());
+        assertFalse(cached.hasHdops());
+        assertEquals(-37.1, cached.getLatitude(1), 0.0);
+        assertTrue(Double.isNaN(cached.getElevation(1)));
+    }
+
+    @Test
+    public void testStaleOrCorruptCache() throws Exception
+    {
+        File gpxFile = folder.newFile("track.gpx");
+        FileUtils.write(gpxFile, "<gpx></gpx>");
+
+        TrackCache cache = TrackCache.forGPX(gpxFile, folder.getRoot());
+        assertEquals(folder.getRoot(), cache.getCacheFile().getParentFile());
+        assertTrue(cache.getCacheFile().getName().matches("track\\.gpx\\.[0-9a-f]{8}\\.track"));
+        assertNotEquals(cache.getCacheFile(), TrackCache.forGPX(new File(folder.newFolder(), "track.gpx"), folder.getRoot()).getCacheFile());
+        assertNull(cache.read(gpxFile.length(), TrackCache.hash(gpxFile)));
+
+        TrackIndex.Builder builder = new TrackIndex.Builder();
+        builder.add(-37.0, 145.0, 1000L);
+        cache.write(builder.build(), gpxFile.length(), TrackCache.hash(gpxFile));
+        assertNotNull(cache.read(gpxFile.length(), TrackCache.hash(gpxFile)));
+
+        /**
+         * A changed GPX file of the same size has a different hash
+         */
+        long hash = TrackCache.hash(gpxFile);
+        FileUtils.write(gpxFile, "<GPX></GPX>");
+        assertNotEquals(hash, TrackCache.hash(gpxFile));
+        assertNull(cache.read(gpxFile.length(), TrackCache.hash(gpxFile)));
+        assertNull(cache.read(gpxFile.length() + 1L, hash));
+        assertNotNull(cache.read(gpxFile.length(), hash));
+
+        /**
+         * Truncated files are ignored
+         */
+        byte[] data = FileUtils.readFileToByteArray(cache.getCacheFile());
+        FileUtils.writeByteArrayToFile(cache.getCacheFile(), Arrays.copyOf(data, data.length - 1));
+        assertNull(cache.read(gpxFile.length(), hash));
+
+        FileUtils.write(cache.getCacheFile(), "not a track");
+        assertNull(cache.read(gpxFile.length(), hash));
+    }
+}
@@ -0,0 +1,145 @@
+package com.gpsphoto;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests building and searching track indices
+ */
+public class TrackIndexTest
+{
+    @Test
+    public void testSortIsStable()
+    {
+        TrackIndex.Builder builder = new TrackIndex.Builder(2);
+        builder.add(3.0, 30.0, 3000L);
+        builder.add(1.0, 10.0, 1000L);
+        builder.add(2.0, 20.0, 2000L);
+        builder.add(2.5, 25.0, 2000L);
+        builder.add(0.0, 0.0, 0L);
+
+        TrackIndex track = builder.build();
+
+        assertEquals(5, track.size());
+
+        long[] expectedTimes = { 0L, 1000L, 2000L, 2000L, 3000L };
+        double[] expectedLatitudes = { 0.0, 1.0, 2.0, 2.5, 3.0 };
+
+        for (int i = 0; i < track.size(); ++i)
+        {
+            assertEquals(expectedTimes[i], track.getTime(i));
+            assertEquals(expectedLatitudes[i], track.getLatitude(i), 0.0);
+            assertEquals(expectedLatitudes[i] * 10.0, track.getLongitude(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testElevationsAddedPartWay()
+    {
+        TrackIndex.Builder builder = new TrackIndex.Builder(2);
+        builder.add(1.0, 10.0, 1000L);
+        builder.add(2.0, 20.0, 2000L);
+        builder.add(3.0, 30.0, 35.0, Double.NaN, 3000L);
+        builder.add(0.0, 0.0, 0L);
+
+        TrackIndex track = builder.build();
+
+        assertTrue(track.hasElevations());
+        assertFalse(track.hasHdops());
+        assertTrue(Double.isNaN(track.getElevation(0)));
+        assertTrue(Double.isNaN(track.getElevation(2)));
+        assertEquals(35.0, track.getElevation(3), 0.0);
+        assertFalse(new TrackIndex.Builder().build().hasElevations());
+    }
+
+    @Test
+    public void testFindTime()
+    {
+        TrackIndex.Builder builder = new TrackIndex.Builder();
+        builder.add(0.0, 0.0, 1000L);
+        builder.add(0.0, 0.0, 2000L);
+        builder.add(0.0, 0.0, 2000L);
+        builder.add(0.0, 0.0, 3000L);
+
+        TrackIndex track = builder.build();
+
+        assertEquals(0, track.findTime(0, 500L, true));
+        assertEquals(1, track.findTime(0, 2000L, true));
+        assertEquals(3, track.findTime(0, 2000L, false));
+        assertEquals(3, track.findTime(1, 2500L, true));
+        assertEquals(4, track.findTime(0, 3000L, false));
+        assertEquals(0, new TrackIndex.Builder().build().findTime(0, 1000L, true));
+    }
+
+    @Test
+    public void testMergeDropsDuplicateTimes()
+    {
+        TrackIndex.Builder first = new TrackIndex.Builder();
+        first.add(1.0, 10.0, 1000L);
+        first.add(3.0, 30.0, Double.NaN, 2.0, 3000L);
+        first.add(5.0, 50.0, 5000L);
+
+        TrackIndex.Builder second = new TrackIndex.Builder();
+        second.add(0.0, 0.0, 0L);
+        second.add(1.5, 15.0, 1000L);
+        second.add(3.5, 35.0, Double.NaN, 1.0, 3000L);
+        second.add(4.0, 40.0, 4000L);
+        second.add(4.5, 45.0, 4000L);
+
+        TrackIndex track = TrackIndex.merge(Arrays.asList(first.build(), new TrackIndex.Builder().build(), second.build()));
+
+        /**
+         * Duplicates keep the lowest HDOP or the earliest track, positions
+         * sharing a time in one track are all kept
+         */
+        long[] expectedTimes = { 0L, 1000L, 3000L, 4000L, 4000L, 5000L };
+        double[] expectedLatitudes = { 0.0, 1.0, 3.5, 4.0, 4.5, 5.0 };
+
+        assertEquals(expectedTimes.length, track.size());
+        assertTrue(track.hasHdops());
+        assertFalse(track.hasElevations());
+
+        for (int i = 0; i < track.size(); ++i)
+        {
+            assertEquals(expectedTimes[i], track.getTime(i));
+            assertEquals(expectedLatitudes[i], track.getLatitude(i), 0.0);
+            assertEquals(expectedLatitudes[i] * 10.0, track.getLongitude(i), 0.0);
+        }
+
+        assertEquals(1.0, track.getHdop(2), 0.0);
+    }
+
+    @Test
+    public void testMergeKeepsTimeGroupsTogether()
+    {
+        TrackIndex.Builder first = new TrackIndex.Builder();
+        first.add(1.0, 10.0, Double.NaN, 2.0, 1000L);
+        first.add(2.0, 20.0, Double.NaN, 2.0, 2000L);
+        first.add(2.5, 25.0, Double.NaN, 2.0, 2000L);
+        first.add(3.0, 30.0, Double.NaN, 2.0, 3000L);
+
+        TrackIndex.Builder second = new TrackIndex.Builder();
+        second.add(2.2, 22.0, Double.NaN, 1.0, 2000L);
+        second.add(3.2, 32.0, Double.NaN, 3.0, 3000L);
+        second.add(3.4, 34.0, Double.NaN, 1.5, 3000L);
+
+        TrackIndex track = TrackIndex.merge(Arrays.asList(first.build(), second.build()));
+
+        /**
+         * Each time comes entirely from the track with the lowest HDOP at it
+         */
+        long[] expectedTimes = { 1000L, 2000L, 3000L, 3000L };
+        double[] expectedLatitudes = { 1.0, 2.2, 3.2, 3.4 };
+
+        assertEquals(expectedTimes.length, track.size());
+
+        for (int i = 0; i < track.size(); ++i)
+        {
+            assertEquals(expectedTimes[i], track.getTime(i));
+            assertEquals(expectedLatitudes[i], track.getLatitude(i), 0.0);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hs.gpxparser;
+
+import com.hs.gpxparser.extension.IExtensionParser;
+import com.hs.gpxparser.modal.GPX;
+import com.hs.gpxparser.modal.Track;
+import com.hs.gpxparser.modal.TrackSegment;
+import com.hs.gpxparser.modal.Waypoint;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests streaming track points matches the document parser
+ */
+public class GPXStreamParserTest
+{
+    private static final String GPX =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n" +
+        "  <metadata><time>2019-06-11T06:00:00Z</time></metadata>\n" +
+        "  <wpt lat=\"1.0\" lon=\"2.0\"><time>2019-06-11T06:00:00Z</time></wpt>\n" +
+        "  <trk><name>Track</name>\n" +
+        "    <trkseg>\n" +
+        "      <trkpt lat=\"-25.1\" lon=\"120.1\"><ele>10.0</ele><time>2019-06-11T06:40:27Z</time></trkpt>\n" +
+        "      <trkpt lat=\"-25.2\" lon=\"120.2\"><time>2019-06-11T06:40:28Z</time><hdop>1.4</hdop>\n" +
+        "        <extensions><speed units=\"m/s\">1.5</speed></extensions>\n" +
+        "      </trkpt>\n" +
+        "    </trkseg>\n" +
+        "    <trkseg>\n" +
+        "      <trkpt lat=\"-25.3\" lon=\"120.3\"/>\n" +
+        "    </trkseg>\n" +
+        "  </trk>\n" +
+        "</gpx>\n";
+
+    @Test
+    public void testTrackPointsMatchDocumentParser() throws Exception
+    {
+        final List<double[]> points = new ArrayList<>();
+
+        GPXStreamParser streamParser = new GPXStreamParser();
+        int count = streamParser.parseTrackPoints(toStream(GPX), new ITrackPointHandler()
+        {
+            @Override
+            public void handleTrackPoint(double latitude, double longitude, double elevation, double hdop, long time, HashMap<String, Object> extensionData)
+            {
+                points.add(new double[] { latitude, longitude, time, elevation, hdop });
+            }
+        });
+
+        assertEquals(3, count);
+
+        GPX gpx = new GPXParser().parseGPX(toStream(GPX));
+
+        int index = 0;
+        for (Track track : gpx.getTracks())
+        {
+            for (TrackSegment segment : track.getTrackSegments())
+            {
+                for (Waypoint waypoint : segment.getWaypoints())
+                {
+                    double[] point = points.get(index++);
+                    assertEquals(waypoint.getLatitude(), point[0], 0.0);
+                    assertEquals(waypoint.getLongitude(), point[1], 0.0);
+
+                    if (!Double.isNaN(point[3]))
+                    {
+                        assertEquals(waypoint.getElevation(), point[3], 0.0);
+                    }
+
+                    if (!Double.isNaN(point[4]))
+                    {
+                        assertEquals(waypoint.getHdop(), point[4], 0.0);
+                    }
+
+                    if (waypoint.getTime() == null)
+                    {
+                        assertEquals(ITrackPointHandler.NO_TIME, (long) point[2]);
+                    }
+                    else
+                    {
+                        assertEquals(waypoint.getTime().getTime(), (long) point[2]);
+                    }
+                }
+            }
+        }
+
+        assertEquals(3, index);
+        assertEquals(10.0, points.get(0)[3], 0.0);
+        assertTrue(Double.isNaN(points.get(0)[4]));
+        assertTrue(Double.isNaN(points.get(1)[3]));
+        assertEquals(1.4, points.get(1)[4], 0.0);
+    }
+
+    @Test
+    public void testExtensionParsers() throws Exception
+    {
+        final List<Object> extensions = new ArrayList<>();
+
+        GPXStreamParser streamParser = new GPXStreamParser();
+        streamParser.addExtensionParser(new IExtensionParser()
+        {
+            @Override
+            public String getId()
+            {
+                return "speed";
+            }
+
+            @Override
+            public Object parseExtensions(Node node)
+            {
+                assertEquals("extensions", node.getNodeName());
+                Node speed = node.getFirstChild();
+                assertEquals("speed", speed.getNodeName());
+                assertEquals("m/s", speed.getAttributes().getNamedItem("units").getNodeValue());
+                return Double.parseDouble(speed.getTextContent());
+            }
+
+            @Override
+            public void writeExtensions(Node node, Document doc)
+            {
+            }
+        });
+
+        streamParser.parseTrackPoints(toStream(GPX), new ITrackPointHandler()
+        {
+            @Override
+            public void handleTrackPoint(double latitude, double longitude, double elevation, double hdop, long time, HashMap<String, Object> extensionData)
+            {
+                extensions.add(extensionData == null ? null : extensionData.get("speed"));
+            }
+        });
+
+        assertNull(extensions.get(0));
+        assertEquals(1.5, (Double) extensions.get(1), 0.0);
+        assertNull(extensions.get(2));
+    }
+
+    @Test(expected = IllegalAccessException.class)
+    public void testNotGPX() throws Exception
+    {
+        new GPXStreamParser().parseTrackPoints(toStream("<kml></kml>"), null);
+    }
+
+    private static InputStream toStream(String text)
+    {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,75 @@
+package com.hs.gpxparser;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests decoding gpx times
+ */
+public class GPXTimeDecoderTest
+{
+    @Test
+    public void testFormats() throws ParseException
+    {
+        long expected = OffsetDateTime.of(2019, 6, 11, 6, 40, 27, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+        assertEquals(expected, GPXTimeDecoder.parse("2019-06-11T06:40:27Z"));
+        assertEquals(expected, GPXTimeDecoder.parse("2019-06-11T06:40:27"));
+        assertEquals(expected, GPXTimeDecoder.parse("  2019-06-11T06:40:27Z\n"));
+        assertEquals(expected, GPXTimeDecoder.parse("2019-06-11T16:40:27+10:00"));
+        assertEquals(expected, GPXTimeDecoder.parse("2019-06-11T16:40:27+1000"));
+        assertEquals(expected, GPXTimeDecoder.parse("2019-06-11T16:40:27+10"));
+        assertEquals(expected, GPXTimeDecoder.parse("2019-06-11T01:10:27-05:30"));
+        assertEquals(expected + 123L, GPXTimeDecoder.parse("2019-06-11T06:40:27.123Z"));
+        assertEquals(expected + 100L, GPXTimeDecoder.parse("2019-06-11T06:40:27.1Z"));
+        assertEquals(expected + 123L, GPXTimeDecoder.parse("2019-06-11T06:40:27.123999+00:00"));
+        assertEquals(expected - 6L * 3600000L - 40L * 60000L - 27000L + 86400000L,
+                     GPXTimeDecoder.parse("2019-06-11T24:00:00Z"));
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        String[] invalid = {
+            "", "2019-06-11", "2019-06-11 06:40:27Z", "2019-13-11T06:40:27Z", "2019-02-29T06:40:27Z",
+            "2019-06-11T06:60:27Z", "2019-06-11T24:00:01Z", "2019-06-11T06:40:27.Z", "2019-06-11T06:40:27+1",
+            "2019-06-11T06:40:27ZZ", "2019-06-11T06:40:27+10:0", "2019-06-1aT06:40:27Z"
+        };
+
+        for (String text : invalid)
+        {
+            assertEquals(text, GPXTimeDecoder.INVALID, GPXTimeDecoder.decode(text.toCharArray(), 0, text.length()));
+        }
+    }
+
+    @Test
+    public void testMatchesJavaTime()
+    {
+        Random random = new Random(1L);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+
+        for (int i = 0; i < 10000; ++i)
+        {
+            OffsetDateTime time = OffsetDateTime.of(1900 + random.nextInt(300), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000) * 1000000,
+                ZoneOffset.ofHoursMinutes(random.nextInt(25) - 12, 0));
+
+            String text = "xx" + formatter.format(time) + "xx";
+            assertEquals(text, time.toInstant().toEpochMilli(), GPXTimeDecoder.decode(text.toCharArray(), 2, text.length() - 4));
+        }
+
+        for (int year = 1996; year <= 2004; ++year)
+        {
+            OffsetDateTime time = OffsetDateTime.of(year, 2, year % 4 == 0 ? 29 : 28, 23, 59, 59, 0, ZoneOffset.UTC);
+            String text = String.format("%04d-02-%02dT23:59:59Z", year, time.getDayOfMonth());
+            assertEquals(text, time.toInstant().toEpochMilli(), GPXTimeDecoder.decode(text.toCharArray(), 0, text.length()));
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.rhis;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests exporting compressed surveys to a spreadsheet
+ */
+public class RHISExporterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String surveyJson(int index)
+    {
+        return String.format("{\"type\":\"rhis\",\"version\":\"1\",\"surveyid\":\"%d\"," +
+            "\"site\":[{\"name\":\"Site %02d\",\"gps\":\"120.%d, -25.%d\",\"additionalinfo\":\"skip\"}]," +
+            "\"counts\":[{\"trees\":\"%d\"},{\"notes\":null}]}", index, index, index, index, index * 10);
+    }
+
+    static void writeSurvey(File survey, String json) throws IOException
+    {
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(survey))
+        {
+            out.putArchiveEntry(new ZipArchiveEntry("survey.json"));
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            out.closeArchiveEntry();
+        }
+    }
+
+    private void assertNoSpoolFiles()
+    {
+        for (String name : folder.getRoot().list())
+        {
+            assertFalse(name, name.endsWith(".spool"));
+        }
+    }
+
+    @Test
+    public void testExportOrder() throws Exception
+    {
+        File inputDir = folder.newFolder("surveys");
+        File subDir = new File(inputDir, "b");
+        subDir.mkdirs();
+
+        /**
+         * Written out of order and across folders, rows follow the sorted paths
+         */
+        for (int i = 39; i >= 0; --i)
+        {
+            File dir = i < 20 ? inputDir : subDir;
+            writeSurvey(new File(dir, String.format("a%02d.survey", i)), surveyJson(i));
+        }
+
+        File outputFile = new File(folder.getRoot(), "rhis.xls");
+        RHISExporter exporter = new RHISExporter(inputDir.getPath(), true, outputFile.getPath(), 4);
+        assertEquals(40, exporter.export());
+
+        try (InputStream in = new FileInputStream(outputFile))
+        {
+            Workbook workbook = new HSSFWorkbook(in);
+            Sheet sheet = workbook.getSheetAt(0);
+
+            Row header = sheet.getRow(0);
+            assertEquals("name", header.getCell(0).getStringCellValue());
+            assertEquals("LongWGS84", header.getCell(1).getStringCellValue());
+            assertEquals("LatWGS84", header.getCell(2).getStringCellValue());
+            assertEquals("trees", header.getCell(3).getStringCellValue());
+            assertEquals("notes", header.getCell(4).getStringCellValue());
+
+            assertEquals(40, sheet.getLastRowNum());
+
+            for (int i = 0; i < 40; ++i)
+            {
+                Row row = sheet.getRow(i + 1);
+                assertEquals(String.format("Site %02d", i), row.getCell(0).getStringCellValue());
+                assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(3).getCellType());
+                assertEquals(i * 10.0, row.getCell(3).getNumericCellValue(), 0.0);
+            }
+        }
+    }
+
+    private File writeSurveys(int count) throws IOException
+    {
+        File inputDir = folder.newFolder("surveys");
+
+        for (int i = 0; i < count; ++i)
+        {
+            writeSurvey(new File(inputDir, String.format("a%04d.survey", i)), surveyJson(i));
+        }
+
+        return inputDir;
+    }
+
+    @Test
+    public void testExportCSV() throws Exception
+    {
+        File inputDir = writeSurveys(3);
+        File outputFile = new File(folder.getRoot(), "rhis.csv");
+
+        assertEquals(3, new RHISExporter(inputDir.getPath(), false, outputFile.getPath(), 2).export());
+
+        List<String> lines = FileUtils.readLines(outputFile, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("name,LongWGS84,LatWGS84,trees,notes", lines.get(0));
+        assertEquals("Site 00,120.0,-25.0,0,", lines.get(1));
+        assertEquals("Site 02,120.2,-25.2,20,", lines.get(3));
+    }
+
+    @Test
+    public void testExportXLSX() throws Exception
+    {
+        File inputDir = writeSurveys(250);
+        File outputFile = new File(folder.getRoot(), "rhis.xlsx");
+
+        assertEquals(250, new RHISExporter(inputDir.getPath(), false, outputFile.getPath(), 4).export());
+
+        try (InputStream in = new FileInputStream(outputFile))
+        {
+            Workbook workbook = new XSSFWorkbook(in);
+            Sheet sheet = workbook.getSheetAt(0);
+
+            assertEquals("trees", sheet.getRow(0).getCell(3).getStringCellValue());
+            assertEquals(250, sheet.getLastRowNum());
+
+            Row row = sheet.getRow(250);
+            assertEquals("Site 249", row.getCell(0).getStringCellValue());
+            assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(3).getCellType());
+            assertEquals(2490.0, row.getCell(3).getNumericCellValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testParseValues() throws Exception
+    {
+        File inputDir = folder.newFolder("surveys");
+        writeSurvey(new File(inputDir, "a.survey"), "{\"surveyid\":{\"nested\":[1,2]}," +
+            "\"site\":[{\"gps\":\" 120.5 , -25.5 \",\"additionalinfo\":{\"photos\":[\"a.jpg\"]}," +
+            "\"trees\":12.50,\"burnt\":true,\"name\":\"  North  \",\"notes\":null}],\"type\":\"rhis\"}");
+
+        File outputFile = new File(folder.getRoot(), "rhis.csv");
+        assertEquals(1, new RHISExporter(inputDir.getPath(), false, outputFile.getPath(), 1).export());
+
+        List<String> lines = FileUtils.readLines(outputFile, StandardCharsets.UTF_8);
+        assertEquals("LongWGS84,LatWGS84,trees,burnt,name,notes", lines.get(0));
+        assertEquals("120.5,-25.5,12.50,true,North,", lines.get(1));
+    }
+
+    @Test
+    public void testMixedSurveyVersions() throws Exception
+    {
+        File inputDir = folder.newFolder("surveys");
+        writeSurvey(new File(inputDir, "a.survey"), surveyJson(1));
+        writeSurvey(new File(inputDir, "b.survey"), "{\"version\":\"2\"," +
+            "\"site\":[{\"name\":\"Site 02\",\"altitude\":\"310\",\"gps\":\"120.2, -25.2\"}]," +
+            "\"fire\":[{\"name\":\"Hot\",\"severity\":\"3\"}]}");
+        writeSurvey(new File(inputDir, "c.survey"), surveyJson(3));
+
+        File outputFile = new File(folder.getRoot(), "rhis.csv");
+        assertEquals(3, new RHISExporter(inputDir.getPath(), false, outputFile.getPath(), 2).export());
+
+        /**
+         * New fields are appended as columns and a reused name is headed by its path
+         */
+        List<String> lines = FileUtils.readLines(outputFile, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("name,LongWGS84,LatWGS84,trees,notes,altitude,$.fire[0].name,severity", lines.get(0));
+        assertEquals("Site 01,120.1,-25.1,10,,,,", lines.get(1));
+        assertEquals("Site 02,120.2,-25.2,,,310,Hot,3", lines.get(2));
+        assertEquals("Site 03,120.3,-25.3,30,,,,", lines.get(3));
+
+        assertNoSpoolFiles();
+    }
+
+    @Test
+    public void testMixedColumnTypes() throws Exception
+    {
+        File inputDir = folder.newFolder("surveys");
+        String[] codes = { "007", "012", "A3" };
+
+        for (int i = 0; i < codes.length; ++i)
+        {
+            writeSurvey(new File(inputDir, String.format("a%d.survey", i)),
+                String.format("{\"site\":[{\"code\":\"%s\",\"trees\":\"%d\"}]}", codes[i], i));
+        }
+
+        File outputFile = new File(folder.getRoot(), "rhis.xls");
+        assertEquals(3, new RHISExporter(inputDir.getPath(), false, outputFile.getPath(), 2).export());
+
+        try (InputStream in = new FileInputStream(outputFile))
+        {
+            Sheet sheet = new HSSFWorkbook(in).getSheetAt(0);
+
+            /**
+             * A column with any text value is written entirely as text
+             */
+            for (int i = 0; i < codes.length; ++i)
+            {
+                Row row = sheet.getRow(i + 1);
+                assertEquals(Cell.CELL_TYPE_STRING, row.getCell(0).getCellType());
+                assertEquals(codes[i], row.getCell(0).getStringCellValue());
+                assertEquals(Cell.CELL_TYPE_NUMERIC, row.getCell(1).getCellType());
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedSurvey() throws Exception
+    {
+        File inputDir = folder.newFolder("surveys");
+        writeSurvey(new File(inputDir, "a.survey"), surveyJson(1));
+        writeSurvey(new File(inputDir, "b.survey"), "{\"site\":[{\"name\":[\"nested\"]}]}");
+
+        File outputFile = new File(folder.getRoot(), "rhis.csv");
+
+        try
+        {
+            new RHISExporter(inputDir.getPath(), false, outputFile.getPath(), 2).export();
+            fail("Expected the malformed survey to fail");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("b.survey"));
+            assertTrue(e.getMessage().contains("$.site[0].name"));
+        }
+
+        assertFalse(outputFile.exists());
+        assertNoSpoolFiles();
+    }
+
+    @Test
+    public void testMissingSurveyJson() throws Exception
+    {
+        File inputDir = folder.newFolder("surveys");
+        writeSurvey(new File(inputDir, "a.survey"), surveyJson(1));
+
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(new File(inputDir, "b.survey")))
+        {
+            out.putArchiveEntry(new ZipArchiveEntry("other.json"));
+            out.write("{}".getBytes(StandardCharsets.UTF_8));
+            out.closeArchiveEntry();
+        }
+
+        RHISExporter exporter = new RHISExporter(inputDir.getPath(), false,
+            new File(folder.getRoot(), "rhis.xls").getPath(), 2);
+
+        try
+        {
+            exporter.export();
+            fail("Expected the survey without survey.json to fail");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("b.survey"));
+        }
+
+        assertFalse(new File(folder.getRoot(), "rhis.xls").exists());
+    }
+}
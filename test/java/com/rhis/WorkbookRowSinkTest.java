@@ -0,0 +1,87 @@
+package com.rhis;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests inferring column types as rows are written
+ */
+public class WorkbookRowSinkTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testColumnTypeJoin()
+    {
+        assertEquals(ColumnType.BLANK, ColumnType.of(" "));
+        assertEquals(ColumnType.NUMBER, ColumnType.of("-25.5"));
+        assertEquals(ColumnType.TEXT, ColumnType.of("Site 1"));
+        assertEquals(ColumnType.TEXT, ColumnType.of("1 tree"));
+
+        assertEquals(ColumnType.NUMBER, ColumnType.BLANK.join(ColumnType.NUMBER));
+        assertEquals(ColumnType.NUMBER, ColumnType.NUMBER.join(ColumnType.BLANK));
+        assertEquals(ColumnType.TEXT, ColumnType.NUMBER.join(ColumnType.TEXT));
+        assertEquals(ColumnType.TEXT, ColumnType.TEXT.join(ColumnType.NUMBER));
+    }
+
+    @Test
+    public void testColumnTypes() throws Exception
+    {
+        File outputFile = new File(folder.getRoot(), "rhis.xls");
+
+        WorkbookRowSink sink = new WorkbookRowSink(outputFile);
+        sink.writeHeader(Arrays.asList("name", "trees", "code"),
+            Arrays.asList(ColumnType.TEXT, ColumnType.NUMBER, ColumnType.TEXT));
+        sink.writeRow(Arrays.asList("Site 1", "10", "007"));
+        sink.writeRow(Arrays.asList("Site 2", "", "A3"));
+        sink.close();
+
+        try (InputStream in = new FileInputStream(outputFile))
+        {
+            Sheet sheet = new HSSFWorkbook(in).getSheetAt(0);
+
+            assertEquals(Cell.CELL_TYPE_NUMERIC, sheet.getRow(1).getCell(1).getCellType());
+            assertEquals(10.0, sheet.getRow(1).getCell(1).getNumericCellValue(), 0.0);
+            assertEquals(Cell.CELL_TYPE_BLANK, sheet.getRow(2).getCell(1).getCellType());
+
+            /**
+             * Numeric looking values in text columns are written as text
+             */
+            assertEquals(Cell.CELL_TYPE_STRING, sheet.getRow(1).getCell(2).getCellType());
+            assertEquals("007", sheet.getRow(1).getCell(2).getStringCellValue());
+        }
+    }
+
+    @Test
+    public void testAbort() throws Exception
+    {
+        for (String name : Arrays.asList("rhis.xls", "rhis.xlsx"))
+        {
+            File outputFile = new File(folder.getRoot(), name);
+
+            WorkbookRowSink sink = new WorkbookRowSink(outputFile);
+            sink.writeHeader(Arrays.asList("name", "trees"), Arrays.asList(ColumnType.TEXT, ColumnType.NUMBER));
+
+            for (int i = 0; i < 500; ++i)
+            {
+                sink.writeRow(Arrays.asList("Site " + i, Integer.toString(i)));
+            }
+
+            sink.abort();
+
+            assertFalse(outputFile.exists());
+        }
+    }
+}